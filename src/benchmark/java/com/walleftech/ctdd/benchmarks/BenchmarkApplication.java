@@ -0,0 +1,23 @@
+package com.walleftech.ctdd.benchmarks;
+
+import com.walleftech.ctdd.CtddApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(CtddApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "spring.boot.admin.client.enabled=false",
+                        "logging.level.root=WARN",
+                        "logging.file=")
+                .properties(properties)
+                .run();
+    }
+}
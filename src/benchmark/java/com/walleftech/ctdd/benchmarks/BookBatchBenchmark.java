@@ -0,0 +1,73 @@
+package com.walleftech.ctdd.benchmarks;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.repositories.BookRepository;
+import com.walleftech.ctdd.services.BookSaveResult;
+import com.walleftech.ctdd.services.BookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BookBatchBenchmark.BOOKS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BookBatchBenchmark {
+
+    static final int BOOKS = 1000;
+
+    private ConfigurableApplicationContext context;
+    private BookService service;
+    private BookRepository repository;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start();
+        service = context.getBean(BookService.class);
+        repository = context.getBean(BookRepository.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void clean() {
+        repository.deleteAllInBatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public int oneAtATime() {
+        int saved = 0;
+        for (Book book : newBooks()) {
+            service.save(book);
+            saved++;
+        }
+        return saved;
+    }
+
+    @Benchmark
+    public int batch() {
+        return (int) service.saveAll(newBooks()).stream().filter(BookSaveResult::isCreated).count();
+    }
+
+    private List<Book> newBooks() {
+        List<Book> books = new ArrayList<>(BOOKS);
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(Book.builder()
+                    .title("Fábrica de Valores")
+                    .author("Evandro Guedes")
+                    .isbn(String.valueOf(sequence++))
+                    .build());
+        }
+        return books;
+    }
+}
@@ -0,0 +1,114 @@
+package com.walleftech.ctdd.benchmarks;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.repositories.BookRepository;
+import com.walleftech.ctdd.services.BookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carga concorrente sobre a listagem com o pool do Tomcat menor que o número de clientes,
+ * comparando o modo padrão com o bulkhead (book.execution.mode). Em SampleTime o JMH
+ * reporta p50/p99/p999 por modo. A vazão útil é o contador "succeeded" (respostas 2xx);
+ * os 503 do bulkhead aparecem em "rejected" e entram nos percentis, que devem ser lidos
+ * junto com a taxa de rejeição.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(128)
+@Fork(1)
+public class BookConcurrencyBenchmark {
+
+    private static final int CATALOG_SIZE = 5000;
+
+    @Param({"blocking", "bulkhead"})
+    public String mode;
+
+    private ConfigurableApplicationContext context;
+    private URL listing;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        context = BenchmarkApplication.start(
+                "book.execution.mode=" + mode,
+                "book.execution.max-concurrent=16",
+                "book.execution.max-wait-ms=50",
+                "server.tomcat.max-threads=32",
+                "spring.datasource.hikari.maximum-pool-size=10",
+                "spring.cache.type=none");
+
+        context.getBean(BookRepository.class).deleteAllInBatch();
+
+        List<Book> books = new ArrayList<>(CATALOG_SIZE);
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            books.add(Book.builder()
+                    .title("Livro " + i)
+                    .author(i % 10 == 0 ? "Evandro Guedes" : "Autor " + i)
+                    .isbn(String.valueOf(i))
+                    .build());
+        }
+        context.getBean(BookService.class).saveAll(books);
+
+        String port = context.getEnvironment().getProperty("local.server.port");
+        listing = new URL("http://localhost:" + port + "/v1/api/books?author=guedes&page=0&size=20");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Responses {
+
+        public long succeeded;
+
+        public long rejected;
+
+        public long failed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            succeeded = 0;
+            rejected = 0;
+            failed = 0;
+        }
+    }
+
+    @Benchmark
+    public int findByFilter(Responses responses) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) listing.openConnection();
+        int status = connection.getResponseCode();
+
+        InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body != null) {
+            byte[] buffer = new byte[8192];
+            while (body.read(buffer) != -1) {
+                // consome o corpo para reaproveitar a conexão
+            }
+            body.close();
+        }
+
+        if (status >= 200 && status < 300) {
+            responses.succeeded++;
+        } else if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+            responses.rejected++;
+        } else {
+            responses.failed++;
+        }
+        return status;
+    }
+}
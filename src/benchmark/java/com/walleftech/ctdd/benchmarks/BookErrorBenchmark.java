@@ -0,0 +1,72 @@
+package com.walleftech.ctdd.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tráfego só de erros: cadastros inválidos contra o create, JSON malformado e buscas por
+ * ids inexistentes. Roda pelo DispatcherServlet da aplicação via MockMvc, sem socket, para
+ * que o custo medido seja o do tratamento de erro. Compara os corpos pré-serializados
+ * desligados (book.errors.preserialized-bodies=false) e ligados; rode com -prof gc para ver
+ * a alocação por requisição.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class BookErrorBenchmark {
+
+    private static final String INVALID_BOOK = "{\"title\": \"Fábrica de Valores\"}";
+    private static final String MALFORMED_BOOK = "{\"title\": ";
+
+    @Param({"false", "true"})
+    public String preserializedBodies;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mvc;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start(
+                "book.errors.preserialized-bodies=" + preserializedBodies,
+                "spring.cache.type=none");
+
+        mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public int createInvalid() throws Exception {
+        return mvc.perform(MockMvcRequestBuilders.post("/v1/api/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(INVALID_BOOK))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int createMalformed() throws Exception {
+        return mvc.perform(MockMvcRequestBuilders.post("/v1/api/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(MALFORMED_BOOK))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int findMissing() throws Exception {
+        return mvc.perform(MockMvcRequestBuilders.get("/v1/api/books/999999"))
+                .andReturn().getResponse().getStatus();
+    }
+}
@@ -0,0 +1,77 @@
+package com.walleftech.ctdd.benchmarks;
+
+import com.walleftech.ctdd.dto.BookDTO;
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.mappers.BookMapper;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookMappingBenchmark {
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final BookMapper bookMapper = Mappers.getMapper(BookMapper.class);
+
+    private Book book;
+    private BookDTO dto;
+    private Page<Book> page;
+
+    @Setup
+    public void setUp() {
+        book = Book.builder().id(1L).title("Fábrica de Valores").author("Evandro Guedes").isbn("123123").build();
+        dto = BookDTO.builder().id(1L).title("Fábrica de Valores").author("Evandro Guedes").isbn("123123").build();
+
+        List<Book> books = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            books.add(Book.builder().id(i).title("Livro " + i).author("Autor " + i).isbn(String.valueOf(i)).build());
+        }
+        page = new PageImpl<>(books, PageRequest.of(0, 100), 1000);
+    }
+
+    @Benchmark
+    public BookDTO modelMapperToDto() {
+        return modelMapper.map(book, BookDTO.class);
+    }
+
+    @Benchmark
+    public BookDTO mapStructToDto() {
+        return bookMapper.toDto(book);
+    }
+
+    @Benchmark
+    public Book modelMapperToEntity() {
+        return modelMapper.map(dto, Book.class);
+    }
+
+    @Benchmark
+    public Book mapStructToEntity() {
+        return bookMapper.toEntity(dto);
+    }
+
+    @Benchmark
+    public Page<BookDTO> modelMapperPage() {
+        List<BookDTO> list = page.getContent().stream()
+                .map(item -> modelMapper.map(item, BookDTO.class))
+                .collect(Collectors.toList());
+        return new PageImpl<>(list, page.getPageable(), page.getTotalElements());
+    }
+
+    @Benchmark
+    public Page<BookDTO> mapStructPage() {
+        return bookMapper.toDtoPage(page);
+    }
+}
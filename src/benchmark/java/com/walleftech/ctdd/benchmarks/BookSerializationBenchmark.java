@@ -0,0 +1,82 @@
+package com.walleftech.ctdd.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walleftech.ctdd.api.BookCborHttpMessageConverter;
+import com.walleftech.ctdd.dto.BookDTO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookSerializationBenchmark {
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    @Param({"json", "cbor"})
+    public String format;
+
+    private ObjectMapper objectMapper;
+
+    private Page<BookDTO> page;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = "cbor".equals(format)
+                ? BookCborHttpMessageConverter.cborMapper(Jackson2ObjectMapperBuilder.json())
+                : Jackson2ObjectMapperBuilder.json().build();
+
+        List<BookDTO> content = new ArrayList<>(pageSize);
+        for (long i = 0; i < pageSize; i++) {
+            content.add(BookDTO.builder()
+                    .id(i)
+                    .title("Fábrica de Valores " + i)
+                    .author("Evandro Guedes")
+                    .isbn(String.valueOf(i))
+                    .version(0L)
+                    .build());
+        }
+        page = new PageImpl<>(content, PageRequest.of(0, pageSize), 10000);
+        payload = objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws IOException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public JsonNode parsePage() throws IOException {
+        return objectMapper.readTree(payload);
+    }
+
+    /**
+     * Imprime o tamanho do payload de cada combinação de formato e página, fora da medição.
+     */
+    public static void main(String[] args) throws IOException {
+        for (String format : new String[]{"json", "cbor"}) {
+            for (int pageSize : new int[]{20, 100}) {
+                BookSerializationBenchmark benchmark = new BookSerializationBenchmark();
+                benchmark.format = format;
+                benchmark.pageSize = pageSize;
+                benchmark.setUp();
+
+                System.out.println("payload " + format + "/" + pageSize + ": " + benchmark.payload.length + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.walleftech.ctdd.benchmarks;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.repositories.BookRepository;
+import com.walleftech.ctdd.services.BookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BookServiceBenchmark {
+
+    private static final int CATALOG_SIZE = 10000;
+
+    @Param({"caffeine", "none"})
+    public String cacheType;
+
+    private ConfigurableApplicationContext context;
+    private BookService service;
+    private List<Long> ids;
+    private final AtomicLong isbns = new AtomicLong(CATALOG_SIZE);
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start("spring.cache.type=" + cacheType);
+        service = context.getBean(BookService.class);
+
+        context.getBean(BookRepository.class).deleteAllInBatch();
+
+        List<Book> books = new ArrayList<>(CATALOG_SIZE);
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            books.add(Book.builder()
+                    .title("Livro " + i)
+                    .author(i % 10 == 0 ? "Evandro Guedes" : "Autor " + i)
+                    .isbn(String.valueOf(i))
+                    .build());
+        }
+
+        ids = new ArrayList<>();
+        service.saveAll(books).forEach(result -> ids.add(result.getBook().getId()));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Book save() {
+        return service.save(Book.builder()
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("bench-" + isbns.incrementAndGet())
+                .build());
+    }
+
+    @Benchmark
+    public Optional<Book> findById() {
+        return service.findById(ids.get(ThreadLocalRandom.current().nextInt(ids.size())));
+    }
+
+    @Benchmark
+    public Page findByFilter() {
+        return service.findByFilter(Book.builder().author("guedes").build(), PageRequest.of(0, 20));
+    }
+}
@@ -0,0 +1,53 @@
+package com.walleftech.ctdd.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo até a primeira resposta de GET /v1/api/books/{id}, em uma JVM nova por medição.
+ * Compara o perfil padrão com o faststart. Para medir o arquivo CDS, rode com
+ * -jvmArgsAppend "-Xshare:on -XX:SharedArchiveFile=target/app-cds.jsa" depois de mvn -Pfaststart package.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class BookStartupBenchmark {
+
+    @Param({"default", "faststart"})
+    public String profile;
+
+    private ConfigurableApplicationContext context;
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public int timeToFirstRequest() throws IOException {
+
+        context = BenchmarkApplication.start("spring.profiles.active=" + profile);
+
+        String port = context.getEnvironment().getProperty("local.server.port");
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + port + "/v1/api/books/1").openConnection();
+        int status = connection.getResponseCode();
+
+        InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body != null) {
+            body.close();
+        }
+        return status;
+    }
+}
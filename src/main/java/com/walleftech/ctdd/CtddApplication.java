@@ -1,6 +1,7 @@
 package com.walleftech.ctdd;
 
-import org.modelmapper.ModelMapper;
+import com.walleftech.ctdd.mappers.BookMapper;
+import org.mapstruct.factory.Mappers;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -9,8 +10,8 @@ import org.springframework.context.annotation.Bean;
 public class CtddApplication {
 
 	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
+	public BookMapper bookMapper() {
+		return Mappers.getMapper(BookMapper.class);
 	}
 
 	public static void main(String[] args) {
@@ -1,25 +1,53 @@
 package com.walleftech.ctdd.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.walleftech.ctdd.dto.BookBatchItemDTO;
+import com.walleftech.ctdd.dto.BookBatchReportDTO;
+import com.walleftech.ctdd.dto.BookBulkReportDTO;
+import com.walleftech.ctdd.dto.BookBulkRequestDTO;
+import com.walleftech.ctdd.dto.BookCursor;
 import com.walleftech.ctdd.dto.BookDTO;
+import com.walleftech.ctdd.dto.BookTrackingDTO;
+import com.walleftech.ctdd.dto.CursorPageDTO;
 import com.walleftech.ctdd.entities.Book;
-import com.walleftech.ctdd.exceptions.ApiError;
 import com.walleftech.ctdd.exceptions.BusinessException;
+import com.walleftech.ctdd.exceptions.PreconditionFailedException;
 import com.walleftech.ctdd.exceptions.ResourceNotFoundException;
+import com.walleftech.ctdd.exceptions.VersionConflictException;
+import com.walleftech.ctdd.mappers.BookMapper;
+import com.walleftech.ctdd.services.BookSaveResult;
 import com.walleftech.ctdd.services.BookService;
+import com.walleftech.ctdd.services.impl.BookWriteBehindQueue;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.validation.BindingResult;
-import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
-import java.util.List;
+import javax.validation.Validator;
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @RestController
@@ -27,114 +55,484 @@ import java.util.stream.Collectors;
 @Slf4j
 public class BookAPI {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String APPLICATION_MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+    public static final String PREFER = "Prefer";
+    public static final String PREFERENCE_APPLIED = "Preference-Applied";
+    public static final String RESPOND_ASYNC = "respond-async";
+
+    private static final int BATCH_CHUNK_SIZE = 500;
+
+    private static final Set<String> PATCHABLE_FIELDS = new HashSet<>(Arrays.asList("title", "author", "isbn", "version"));
+
     private BookService service;
-    private ModelMapper mapper;
+    private BookMapper mapper;
+    private ObjectMapper objectMapper;
+    private Validator validator;
+    private ObjectProvider<BookWriteBehindQueue> writeBehind;
 
-    public BookAPI(BookService service, ModelMapper mapper) {
+    public BookAPI(BookService service, BookMapper mapper, ObjectMapper objectMapper, Validator validator,
+                   ObjectProvider<BookWriteBehindQueue> writeBehind) {
         this.service = service;
         this.mapper = mapper;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.writeBehind = writeBehind;
     }
 
     @PostMapping
     public ResponseEntity<BookDTO> create( @Valid @RequestBody BookDTO dto) {
 
-        log.info("Livro: " + dto.getTitle() + " recebido");
+        log.info("Livro: {} recebido", dto.getTitle());
 
-        Book book = mapper.map(dto, Book.class);
+        Book book = mapper.toEntity(dto);
         book = service.save(book);
 
         log.info("Livro salvo com sucesso!");
 
-        BookDTO bookDTO = mapper.map(book, BookDTO.class);
+        BookDTO bookDTO = mapper.toDto(book);
 
         return ResponseEntity.status(HttpStatus.CREATED).body(bookDTO);
 
     }
 
+    @PostMapping(headers = PREFER)
+    public ResponseEntity<?> createAsync(@Valid @RequestBody BookDTO dto, @RequestHeader(PREFER) String prefer) {
+
+        BookWriteBehindQueue queue = writeBehind.getIfAvailable();
+        if (queue == null || !prefer.toLowerCase(Locale.ROOT).contains(RESPOND_ASYNC)) {
+            return create(dto);
+        }
+
+        BookTrackingDTO tracking = queue.accept(mapper.toEntity(dto));
+
+        log.info("Livro: {} aceito para gravação assíncrona", dto.getTitle());
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/v1/api/books/pending/" + tracking.getTrackingId()))
+                .header(PREFERENCE_APPLIED, RESPOND_ASYNC)
+                .body(tracking);
+    }
+
+    @GetMapping("/pending/{trackingId}")
+    public ResponseEntity<BookTrackingDTO> findPending(@PathVariable String trackingId) {
+
+        BookWriteBehindQueue queue = writeBehind.getIfAvailable();
+        if (queue == null) {
+            throw ResourceNotFoundException.NOT_FOUND;
+        }
+
+        BookTrackingDTO tracking = queue.status(trackingId).orElseThrow(() -> ResourceNotFoundException.NOT_FOUND);
+
+        return ResponseEntity.ok(tracking);
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BookBatchReportDTO> createBatch(@RequestBody List<BookDTO> dtos) {
+
+        log.info("Lote de {} livros recebido", dtos.size());
+
+        return ResponseEntity.ok(saveBatch(dtos.iterator()));
+    }
+
+    @PostMapping(value = "/batch", consumes = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<BookBatchReportDTO> createBatchFromNdjson(HttpServletRequest request) {
+
+        BookBatchReportDTO report;
+
+        try (MappingIterator<BookDTO> lines = objectMapper.readerFor(BookDTO.class)
+                .readValues(request.getInputStream())) {
+            report = saveBatch(lines);
+        } catch (IOException ex) {
+            throw new BusinessException("Conteúdo NDJSON inválido!");
+        }
+
+        log.info("Lote NDJSON de {} livros recebido", report.getReceived());
+
+        return ResponseEntity.ok(report);
+    }
+
     @GetMapping("/{id}")
-    public ResponseEntity<BookDTO> findById(@PathVariable Long id) {
-        Book book = service.findById(id).get();
+    public ResponseEntity<BookDTO> findById(@PathVariable Long id, WebRequest request) {
+        Book book = service.findById(id).orElseThrow(() -> ResourceNotFoundException.NOT_FOUND);
+
+        String etag = BookETags.of(book);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
 
-        log.info("Livro: " + book.getTitle() + " encontrado");
-        BookDTO dto = mapper.map(book, BookDTO.class);
+        log.info("Livro: {} encontrado", book.getTitle());
+        BookDTO dto = mapper.toDto(book);
 
-        return ResponseEntity.ok().body(dto);
+        return withETag(ResponseEntity.ok(), etag).body(dto);
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<BookDTO> updateById(@PathVariable Long id, @Valid @RequestBody BookDTO dto) {
-        Book book = service.findById(id).get();
+    public ResponseEntity<BookDTO> updateById(@PathVariable Long id, @Valid @RequestBody BookDTO dto,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Book changes = mapper.toEntity(dto);
 
-        Book updatedBook = mapper.map(dto, Book.class);
-
-        updatedBook = service.updateById(book.getId(), updatedBook);
+        Book updatedBook = withPrecondition(id, ifMatch, changes, () -> service.updateById(id, changes));
 
         log.info("Livro atualizado!");
 
-        BookDTO bookDTO = mapper.map(updatedBook, BookDTO.class);
-
-        return ResponseEntity.ok(bookDTO);
+        BookDTO bookDTO = mapper.toDto(updatedBook);
 
+        return withETag(ResponseEntity.ok(), BookETags.of(updatedBook)).body(bookDTO);
+    }
 
+    @PatchMapping(value = "/{id}", consumes = APPLICATION_MERGE_PATCH_JSON_VALUE)
+    public ResponseEntity<BookDTO> patchById(@PathVariable Long id, @RequestBody JsonNode patch,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        if (!patch.isObject()) {
+            throw new BusinessException("Merge patch inválido!");
+        }
+
+        BookDTO dto;
+        try {
+            dto = objectMapper.treeToValue(patch, BookDTO.class);
+        } catch (JsonProcessingException ex) {
+            throw new BusinessException("Merge patch inválido!");
+        }
+
+        List<String> errors = new ArrayList<>();
+        patch.fieldNames().forEachRemaining(field -> {
+            if (!PATCHABLE_FIELDS.contains(field)) {
+                errors.add(field + " não pode ser alterado");
+                return;
+            }
+            validator.validateProperty(dto, field)
+                    .forEach(violation -> errors.add(field + " " + violation.getMessage()));
+        });
+        if (!errors.isEmpty()) {
+            throw new BusinessException(String.join(", ", errors));
+        }
+
+        Book changes = mapper.toEntity(dto);
+
+        Book patchedBook = withPrecondition(id, ifMatch, changes, () -> service.patchById(id, changes));
+
+        log.info("Livro atualizado parcialmente!");
+
+        return withETag(ResponseEntity.ok(), BookETags.of(patchedBook)).body(mapper.toDto(patchedBook));
     }
 
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deleteById(@PathVariable Long id) {
-        Book book  = service.findById(id).get();
-        service.deleteById(book.getId());
+        service.deleteById(id);
 
         log.info("Livro deletado!");
     }
 
+    @DeleteMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BookBulkReportDTO> deleteAll(@RequestBody BookBulkRequestDTO request) {
+
+        int deleted = service.deleteAll(request.getIds(), mapper.toEntity(request.getFilter()));
+
+        log.info("{} livros deletados em lote!", deleted);
+
+        return ResponseEntity.ok(BookBulkReportDTO.builder().affected(deleted).build());
+    }
+
+    @PatchMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BookBulkReportDTO> updateAll(@RequestBody BookBulkRequestDTO request) {
+
+        int updated = service.updateAll(request.getIds(), mapper.toEntity(request.getFilter()),
+                mapper.toEntity(request.getChanges()));
+
+        log.info("{} livros atualizados em lote!", updated);
+
+        return ResponseEntity.ok(BookBulkReportDTO.builder().affected(updated).build());
+    }
+
+    @GetMapping("/export")
+    public void export(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response)
+            throws IOException {
+
+        if (!"ndjson".equalsIgnoreCase(format) && !"csv".equalsIgnoreCase(format)) {
+            throw new BusinessException("Formato de exportação inválido!");
+        }
+
+        boolean csv = "csv".equalsIgnoreCase(format);
+
+        response.setContentType(csv ? "text/csv" : APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        // só o flush por bloco chega ao socket: nem o writeValue nem o gerador repassam flush por livro
+        ObjectWriter rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        generator.setRootValueSeparator(null);
+
+        if (csv) {
+            writer.write("id,title,author,isbn\n");
+        }
+
+        service.exportAll(chunk -> {
+            try {
+                for (Book book : chunk) {
+                    if (csv) {
+                        writeCsvLine(writer, book);
+                    } else {
+                        rowWriter.writeValue(generator, mapper.toDto(book));
+                        generator.writeRaw('\n');
+                    }
+                }
+                generator.flush();
+                writer.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+
+        generator.close();
+        writer.flush();
+
+        log.info("Catálogo exportado!");
+    }
+
     @GetMapping
-    public Page<BookDTO> findByFilters(BookDTO dto, Pageable pageRequest) {
-        Book filters = mapper.map(dto, Book.class);
-        Page<Book> result = service.findByFilter(filters, pageRequest);
+    public ResponseEntity<Slice<BookDTO>> findByFilters(BookDTO dto, Pageable pageRequest,
+                                                        @RequestParam(defaultValue = "exact") String count,
+                                                        WebRequest request) {
+        Book filters = mapper.toEntity(dto);
+        Slice<Book> result;
+
+        if ("exact".equalsIgnoreCase(count)) {
+            result = service.findByFilter(filters, pageRequest);
+        } else if ("none".equalsIgnoreCase(count)) {
+            result = service.findSliceByFilter(filters, pageRequest);
+        } else if ("cached".equalsIgnoreCase(count)) {
+            result = service.findByFilterWithCachedCount(filters, pageRequest);
+        } else {
+            throw new BusinessException("Modo de contagem inválido!");
+        }
+
+        String etag = BookETags.of(result);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        log.info("Livros encontrados!");
+
+        return ResponseEntity.ok().eTag(etag).body(mapper.toDtoSlice(result));
+    }
+
+    @GetMapping(params = {"q", "!after"})
+    public Page<BookDTO> search(@RequestParam String q, Pageable pageRequest) {
+        Page<Book> result = service.search(q, pageRequest);
 
-        List<BookDTO> list = result.getContent().stream()
-                .map(book -> mapper.map(book, BookDTO.class))
-                .collect(Collectors.toList());
+        log.info("Livros encontrados!");
+
+        return mapper.toDtoPage(result);
+    }
+
+    @GetMapping(params = "after")
+    public CursorPageDTO<BookDTO> findByFiltersAfter(BookDTO dto, @RequestParam String after, Pageable pageRequest) {
+        Book filters = mapper.toEntity(dto);
+
+        BookCursor cursor = after.isEmpty() ? null : BookCursor.decode(after);
+        Sort.Order order = cursor != null ? cursor.toOrder()
+                : pageRequest.getSort().stream().findFirst().orElse(Sort.Order.asc("id"));
+        int size = pageRequest.getPageSize();
+
+        List<Book> result = service.findByFilterAfter(filters, order, cursor, size + 1);
+        boolean hasNext = result.size() > size;
+        List<Book> content = hasNext ? result.subList(0, size) : result;
+
+        List<BookDTO> list = mapper.toDtoList(content);
 
         log.info("Livros encontrados!");
 
-        return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
+        return CursorPageDTO.<BookDTO>builder()
+                .content(list)
+                .size(list.size())
+                .next(hasNext ? BookCursor.after(content.get(size - 1), order).encode() : null)
+                .build();
     }
 
-    @ExceptionHandler(MethodArgumentNotValidException.class)
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public ApiError handleValidationException(MethodArgumentNotValidException ex) {
+    /**
+     * Aplica o If-Match: "*" aceita qualquer versão existente e uma lista aceita qualquer uma
+     * das ETags. Sem o livro, ou com a versão alterada no meio do caminho, a resposta é 412.
+     */
+    private Book withPrecondition(Long id, String ifMatch, Book changes, Supplier<Book> update) {
+        try {
+            if (ifMatch != null) {
+                changes.setVersion(expectedVersion(id, ifMatch));
+            }
+            return update.get();
+        } catch (VersionConflictException ex) {
+            if (ifMatch != null) {
+                throw new PreconditionFailedException(ex.getMessage());
+            }
+            throw ex;
+        } catch (ResourceNotFoundException ex) {
+            if (ifMatch != null) {
+                throw new PreconditionFailedException("ETag não corresponde ao livro!");
+            }
+            throw ex;
+        }
+    }
 
-        String httpStatus = "400";
-        String httpMessage = "Bad Request";
-        BindingResult bindingResult = ex.getBindingResult();
+    private Long expectedVersion(Long id, String ifMatch) {
 
-        log.error(ex.getMessage());
+        if (BookETags.matchesAny(ifMatch)) {
+            return null;
+        }
 
-        return new ApiError(httpStatus,httpMessage, bindingResult);
+        Set<Long> versions = BookETags.versionsOf(id, ifMatch);
+        if (versions.size() == 1) {
+            return versions.iterator().next();
+        }
+
+        // várias ETags: a versão atual precisa ser uma delas, e o update ainda a confere
+        Long current = service.findById(id).map(Book::getVersion).orElse(null);
+        if (current == null || !versions.contains(current)) {
+            throw VersionConflictException.VERSION_CONFLICT;
+        }
+        return current;
     }
 
-    @ExceptionHandler(BusinessException.class)
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public ApiError handleBusinessException(BusinessException ex) {
+    private ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder builder, String etag) {
+        return etag == null ? builder : builder.eTag(etag);
+    }
 
-        String httpStatus = "400";
-        String httpMessage = "Bad Request";
+    private void writeCsvLine(Writer writer, Book book) throws IOException {
+        writer.write(String.valueOf(book.getId()));
+        writer.write(',');
+        writer.write(csvValue(book.getTitle()));
+        writer.write(',');
+        writer.write(csvValue(book.getAuthor()));
+        writer.write(',');
+        writer.write(csvValue(book.getIsbn()));
+        writer.write('\n');
+    }
 
-        log.error(ex.getMessage());
+    private String csvValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
 
-        return new ApiError(httpStatus, httpMessage, ex);
+    private BookBatchReportDTO saveBatch(Iterator<BookDTO> dtos) {
+
+        List<BookBatchItemDTO> items = new ArrayList<>();
+        int created = 0;
+        boolean readable = true;
+
+        while (readable) {
+            List<BookDTO> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+            readable = readChunk(dtos, chunk);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            created += saveChunk(chunk, items);
+        }
+
+        if (!readable) {
+            items.add(BookBatchItemDTO.builder()
+                    .index(items.size())
+                    .status(BookBatchItemDTO.Status.INVALID)
+                    .message("Conteúdo NDJSON inválido!")
+                    .build());
+        }
+
+        return BookBatchReportDTO.builder()
+                .received(items.size())
+                .created(created)
+                .rejected(items.size() - created)
+                .items(items)
+                .build();
     }
 
-    @ExceptionHandler(ResourceNotFoundException.class)
-    @ResponseStatus(HttpStatus.NOT_FOUND)
-    public ApiError handleResourceNotFoundException(ResourceNotFoundException ex) {
+    private boolean readChunk(Iterator<BookDTO> dtos, List<BookDTO> chunk) {
+        try {
+            while (chunk.size() < BATCH_CHUNK_SIZE && dtos.hasNext()) {
+                chunk.add(dtos.next());
+            }
+            return true;
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
 
-        String httpStatus = "404";
-        String httpMessage = "Resource Not Found";
+    private int saveChunk(List<BookDTO> dtos, List<BookBatchItemDTO> items) {
+
+        List<Book> books = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+
+        for (BookDTO dto : dtos) {
+            int index = items.size();
+            Set<ConstraintViolation<BookDTO>> violations = dto == null
+                    ? Collections.emptySet() : validator.validate(dto);
+
+            if (dto == null || !violations.isEmpty()) {
+                items.add(BookBatchItemDTO.builder()
+                        .index(index)
+                        .isbn(dto == null ? null : dto.getIsbn())
+                        .status(BookBatchItemDTO.Status.INVALID)
+                        .message(violations.stream()
+                                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                                .collect(Collectors.joining(", ")))
+                        .build());
+                continue;
+            }
+
+            items.add(null);
+            books.add(mapper.toEntity(dto));
+            positions.add(index);
+        }
+
+        List<BookSaveResult> results = service.saveAll(books);
+        int created = 0;
+
+        for (int j = 0; j < results.size(); j++) {
+            BookSaveResult result = results.get(j);
+            Book book = result.getBook();
+            if (result.isCreated()) {
+                created++;
+            }
+
+            items.set(positions.get(j), BookBatchItemDTO.builder()
+                    .index(positions.get(j))
+                    .id(result.isCreated() ? book.getId() : null)
+                    .isbn(book.getIsbn())
+                    .status(batchStatus(result.getStatus()))
+                    .message(batchMessage(result.getStatus()))
+                    .build());
+        }
+
+        return created;
+    }
 
-        log.error(ex.getMessage());
+    private BookBatchItemDTO.Status batchStatus(BookSaveResult.Status status) {
+        switch (status) {
+            case CREATED:
+                return BookBatchItemDTO.Status.CREATED;
+            case DUPLICATED:
+                return BookBatchItemDTO.Status.DUPLICATED;
+            default:
+                return BookBatchItemDTO.Status.INVALID;
+        }
+    }
 
-        return new ApiError(httpStatus, httpMessage, ex);
+    private String batchMessage(BookSaveResult.Status status) {
+        switch (status) {
+            case CREATED:
+                return null;
+            case DUPLICATED:
+                return "Isbn já registrado!";
+            default:
+                return "Livro rejeitado pelo banco!";
+        }
     }
 }
@@ -0,0 +1,84 @@
+package com.walleftech.ctdd.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walleftech.ctdd.exceptions.ApiError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limita quantas requisições da API de livros ocupam threads do Tomcat ao mesmo tempo.
+ * Quando o banco fica lento, o excedente recebe 503 em vez de esgotar o pool e
+ * enfileirar as demais rotas (actuator, swagger).
+ */
+@Slf4j
+public class BookBulkheadFilter extends OncePerRequestFilter {
+
+    private final Semaphore permits;
+    private final long maxWaitMillis;
+    private final byte[] rejectedBody;
+    private final Counter rejected;
+
+    public BookBulkheadFilter(int maxConcurrent, long maxWaitMillis, ObjectMapper objectMapper,
+                              MeterRegistry registry) throws IOException {
+
+        this.permits = new Semaphore(maxConcurrent);
+        this.maxWaitMillis = maxWaitMillis;
+        this.rejectedBody = objectMapper.writeValueAsBytes(
+                new ApiError("503", "Service Unavailable", "Servidor ocupado, tente novamente!"));
+        this.rejected = Counter.builder("book.bulkhead.rejected").register(registry);
+
+        Gauge.builder("book.bulkhead.available", permits, Semaphore::availablePermits).register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            reject(response);
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+
+        rejected.increment();
+        log.warn("Requisição rejeitada pelo bulkhead da API de livros");
+
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLength(rejectedBody.length);
+        response.getOutputStream().write(rejectedBody);
+    }
+}
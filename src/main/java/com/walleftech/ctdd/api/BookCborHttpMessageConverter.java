@@ -0,0 +1,49 @@
+package com.walleftech.ctdd.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * application/cbor para quem pede no Accept; JSON continua o padrão. Páginas e fatias saem
+ * num envelope enxuto (content, page, size, total, hasNext) em vez do Pageable completo.
+ */
+@Component
+public class BookCborHttpMessageConverter extends MappingJackson2CborHttpMessageConverter {
+
+    public BookCborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        super(cborMapper(builder));
+    }
+
+    public static ObjectMapper cborMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.factory(new CBORFactory())
+                .serializerByType(Slice.class, new CompactSliceSerializer())
+                .build();
+    }
+
+    static class CompactSliceSerializer extends JsonSerializer<Slice<?>> {
+
+        @Override
+        public void serialize(Slice<?> slice, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            generator.writeFieldName("content");
+            provider.defaultSerializeValue(slice.getContent(), generator);
+            generator.writeNumberField("page", slice.getNumber());
+            generator.writeNumberField("size", slice.getSize());
+            if (slice instanceof Page) {
+                generator.writeNumberField("total", ((Page<?>) slice).getTotalElements());
+            }
+            generator.writeBooleanField("hasNext", slice.hasNext());
+            generator.writeEndObject();
+        }
+    }
+}
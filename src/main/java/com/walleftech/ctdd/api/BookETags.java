@@ -0,0 +1,80 @@
+package com.walleftech.ctdd.api;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.exceptions.PreconditionFailedException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * ETags fortes derivados de id e @Version, sem serializar o corpo.
+ * Livro: "id-versão". Página: hash FNV-1a de (total ou hasNext, página, tamanho, ids e versões).
+ */
+final class BookETags {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private BookETags() {
+    }
+
+    static String of(Book book) {
+        return book.getVersion() == null ? null : "\"" + book.getId() + "-" + book.getVersion() + "\"";
+    }
+
+    static String of(Slice<Book> page) {
+
+        long hash = FNV_OFFSET;
+        hash = mix(hash, page instanceof Page ? ((Page<Book>) page).getTotalElements() : page.hasNext() ? -1 : -2);
+        hash = mix(hash, page.getNumber());
+        hash = mix(hash, page.getSize());
+
+        for (Book book : page.getContent()) {
+            hash = mix(hash, book.getId() == null ? -1 : book.getId());
+            hash = mix(hash, book.getVersion() == null ? -1 : book.getVersion());
+        }
+
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    static boolean matchesAny(String ifMatch) {
+        return "*".equals(ifMatch.trim());
+    }
+
+    /**
+     * Versões do livro aceitas por um If-Match com uma ou mais ETags separadas por vírgula.
+     * Entradas de outro livro são ignoradas; se nenhuma for deste livro, 412.
+     */
+    static Set<Long> versionsOf(Long id, String ifMatch) {
+
+        String prefix = "\"" + id + "-";
+        Set<Long> versions = new LinkedHashSet<>();
+
+        for (String entry : ifMatch.split(",")) {
+            String etag = entry.trim();
+            if (!etag.startsWith(prefix) || !etag.endsWith("\"") || etag.length() <= prefix.length()) {
+                continue;
+            }
+            try {
+                versions.add(Long.valueOf(etag.substring(prefix.length(), etag.length() - 1)));
+            } catch (NumberFormatException ex) {
+                // não é uma ETag gerada por este serviço
+            }
+        }
+
+        if (versions.isEmpty()) {
+            throw new PreconditionFailedException("ETag não corresponde ao livro!");
+        }
+        return versions;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,30 @@
+package com.walleftech.ctdd.configurations;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walleftech.ctdd.api.BookBulkheadFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+@Configuration
+@ConditionalOnProperty(name = "book.execution.mode", havingValue = "bulkhead")
+public class ExecutionConfiguration {
+
+    @Bean
+    public FilterRegistrationBean<BookBulkheadFilter> bookBulkheadFilter(
+            @Value("${book.execution.max-concurrent:32}") int maxConcurrent,
+            @Value("${book.execution.max-wait-ms:50}") long maxWaitMillis,
+            ObjectMapper objectMapper,
+            MeterRegistry registry) throws IOException {
+
+        FilterRegistrationBean<BookBulkheadFilter> registration = new FilterRegistrationBean<>(
+                new BookBulkheadFilter(maxConcurrent, maxWaitMillis, objectMapper, registry));
+        registration.addUrlPatterns("/v1/api/books", "/v1/api/books/*");
+        return registration;
+    }
+}
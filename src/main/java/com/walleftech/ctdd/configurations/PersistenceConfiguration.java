@@ -0,0 +1,46 @@
+package com.walleftech.ctdd.configurations;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+@Configuration
+public class PersistenceConfiguration {
+
+    /**
+     * Ocupação do pool (ativas / máximo) e fila de espera, ao lado das métricas hikaricp.* do Boot.
+     */
+    @Bean
+    public MeterBinder bookPoolSaturation(DataSource dataSource) {
+        return registry -> {
+            HikariDataSource hikari = unwrap(dataSource);
+            if (hikari == null) {
+                return;
+            }
+
+            Gauge.builder("book.pool.saturation", hikari, pool -> {
+                HikariPoolMXBean mxBean = pool.getHikariPoolMXBean();
+                return mxBean == null ? 0 : (double) mxBean.getActiveConnections() / pool.getMaximumPoolSize();
+            }).register(registry);
+
+            Gauge.builder("book.pool.waiting", hikari, pool -> {
+                HikariPoolMXBean mxBean = pool.getHikariPoolMXBean();
+                return mxBean == null ? 0 : mxBean.getThreadsAwaitingConnection();
+            }).register(registry);
+        };
+    }
+
+    static HikariDataSource unwrap(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException ex) {
+            return null;
+        }
+    }
+}
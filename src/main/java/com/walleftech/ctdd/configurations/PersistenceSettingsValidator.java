@@ -0,0 +1,84 @@
+package com.walleftech.ctdd.configurations;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Confere, antes de abrir a porta HTTP, se o pool e o Hibernate efetivos batem com o declarado
+ * em book.persistence.*. Qualquer divergência interrompe a subida.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "book.persistence.validate", havingValue = "true")
+public class PersistenceSettingsValidator {
+
+    private final DataSource dataSource;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ObjectProvider<OpenEntityManagerInViewInterceptor> openInViewInterceptor;
+
+    private final int poolSize;
+    private final String batchSize;
+    private final boolean openInView;
+
+    public PersistenceSettingsValidator(DataSource dataSource,
+                                        EntityManagerFactory entityManagerFactory,
+                                        ObjectProvider<OpenEntityManagerInViewInterceptor> openInViewInterceptor,
+                                        @Value("${book.persistence.pool-size}") int poolSize,
+                                        @Value("${book.persistence.batch-size}") String batchSize,
+                                        @Value("${book.persistence.open-in-view:false}") boolean openInView) {
+        this.dataSource = dataSource;
+        this.entityManagerFactory = entityManagerFactory;
+        this.openInViewInterceptor = openInViewInterceptor;
+        this.poolSize = poolSize;
+        this.batchSize = batchSize;
+        this.openInView = openInView;
+    }
+
+    @PostConstruct
+    public void validate() {
+
+        List<String> errors = new ArrayList<>();
+
+        HikariDataSource hikari = PersistenceConfiguration.unwrap(dataSource);
+        if (hikari == null) {
+            errors.add("pool de conexões não é Hikari");
+        } else {
+            expect(errors, "maximum-pool-size", poolSize, hikari.getMaximumPoolSize());
+            expect(errors, "minimum-idle", poolSize, hikari.getMinimumIdle());
+        }
+
+        Map<String, Object> properties = entityManagerFactory.getProperties();
+        expect(errors, "hibernate.jdbc.batch_size", batchSize, properties.get("hibernate.jdbc.batch_size"));
+        expect(errors, "hibernate.order_inserts", "true", properties.get("hibernate.order_inserts"));
+        expect(errors, "hibernate.order_updates", "true", properties.get("hibernate.order_updates"));
+        expect(errors, "hibernate.query.in_clause_parameter_padding", "true",
+                properties.get("hibernate.query.in_clause_parameter_padding"));
+        expect(errors, "open-in-view", openInView, openInViewInterceptor.getIfAvailable() != null);
+
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Configuração de persistência divergente: " + String.join(", ", errors));
+        }
+
+        log.info("Configuração de persistência validada: pool={}, batch={}, open-in-view={}",
+                poolSize, batchSize, openInView);
+    }
+
+    private void expect(List<String> errors, String name, Object expected, Object actual) {
+        if (!Objects.equals(String.valueOf(expected), String.valueOf(actual))) {
+            errors.add(name + " esperado " + expected + " mas está " + actual);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.walleftech.ctdd.configurations;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Carrega entre as requisições do mesmo cliente o horário da sua última escrita, num cookie,
+ * para que só as leituras dele fiquem no primário durante a janela de read-your-writes.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE = "book-last-write";
+
+    private final long readYourWritesMillis;
+    private final int maxAgeSeconds;
+
+    public ReadYourWritesFilter(long readYourWritesMillis) {
+        this.readYourWritesMillis = readYourWritesMillis;
+        this.maxAgeSeconds = (int) Math.max(1, (readYourWritesMillis + 999) / 1000);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        ReplicaRoutingDataSource.bindClient(lastWrite(request), readYourWritesMillis, lastWrite -> {
+            if (!response.isCommitted()) {
+                Cookie cookie = new Cookie(COOKIE, Long.toString(lastWrite));
+                cookie.setPath("/");
+                cookie.setHttpOnly(true);
+                cookie.setMaxAge(maxAgeSeconds);
+                response.addCookie(cookie);
+            }
+        });
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.unbindClient();
+        }
+    }
+
+    private static long lastWrite(HttpServletRequest request) {
+
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,111 @@
+package com.walleftech.ctdd.configurations;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Substitui o DataSource do Boot por primário + réplicas de leitura (book.replicas.urls).
+ * As réplicas usam o mesmo usuário e senha do primário. Só o proxy é bean do tipo DataSource:
+ * o inicializador de schema do Boot é disparado por qualquer DataSource do contexto e
+ * entraria em ciclo com o primário exposto separadamente.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "book.replicas.enabled", havingValue = "true")
+public class ReplicaConfiguration {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            DataSourceProperties properties,
+            Environment environment,
+            @Value("${book.replicas.urls}") String[] urls,
+            @Value("${book.replicas.maximum-pool-size:10}") int maximumPoolSize,
+            @Value("${book.replicas.connection-timeout-ms:1000}") long connectionTimeoutMillis) {
+
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("book-replica-" + (i + 1));
+            replica.setJdbcUrl(urls[i].trim());
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setMaximumPoolSize(maximumPoolSize);
+            replica.setConnectionTimeout(connectionTimeoutMillis);
+            replica.setReadOnly(true);
+            replicas.put(replica.getPoolName(), replica);
+        }
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas);
+        routing.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${book.replicas.read-your-writes-ms:1000}") long readYourWritesMillis) {
+
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+                new FilterRegistrationBean<>(new ReadYourWritesFilter(readYourWritesMillis));
+        registration.addUrlPatterns("/v1/api/books", "/v1/api/books/*");
+        return registration;
+    }
+
+    @Bean
+    public ReplicaHealthCheck replicaHealthCheck(DataSource dataSource) throws SQLException {
+        return new ReplicaHealthCheck(dataSource.unwrap(ReplicaRoutingDataSource.class));
+    }
+
+    /**
+     * Verifica as réplicas periodicamente, publica as métricas do roteamento e fecha os pools
+     * quando o contexto termina. O DataSource não recebe o MeterRegistry direto porque os
+     * binders de pool do actuator dependem dele.
+     */
+    public static class ReplicaHealthCheck implements MeterBinder, DisposableBean {
+
+        private final ReplicaRoutingDataSource routing;
+
+        ReplicaHealthCheck(ReplicaRoutingDataSource routing) {
+            this.routing = routing;
+        }
+
+        @Scheduled(fixedDelayString = "${book.replicas.health-check-ms:5000}")
+        public void check() {
+            routing.checkReplicas();
+        }
+
+        @Override
+        public void bindTo(MeterRegistry registry) {
+            routing.bindTo(registry);
+        }
+
+        @Override
+        public void destroy() {
+            routing.close();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.walleftech.ctdd.configurations;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Envia transações somente leitura para as réplicas saudáveis, em rodízio, e o resto para o
+ * primário. A janela de read-your-writes é por cliente: o {@link ReadYourWritesFilter} associa
+ * à thread da requisição o horário da última escrita do cliente, e só as leituras desse
+ * cliente ficam no primário enquanto a janela durar. Precisa ficar atrás de um
+ * LazyConnectionDataSourceProxy: a conexão só é escolhida no primeiro comando, quando a
+ * transação já está marcada como somente leitura.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements MeterBinder, AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+    public static final String HEALTHY_GAUGE = "book.replicas.healthy";
+    public static final String FALLBACK_COUNTER = "book.replicas.fallback";
+
+    private static final ThreadLocal<Client> CLIENT = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas) {
+
+        this.primary = primary;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+
+        Map<Object, Object> targets = new LinkedHashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(FALLBACK_COUNTER, fallbacks, AtomicLong::get).register(registry);
+        Gauge.builder(HEALTHY_GAUGE, this, ReplicaRoutingDataSource::healthyReplicas).register(registry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            Client client = CLIENT.get();
+            if (client != null && TransactionSynchronizationManager.isSynchronizationActive()
+                    && TransactionSynchronizationManager.isActualTransactionActive()) {
+                client.wrote();
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        client.wrote();
+                    }
+                });
+            }
+            return PRIMARY;
+        }
+
+        if (pinnedToPrimary()) {
+            return PRIMARY;
+        }
+
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+            if (replica.healthy) {
+                return replica.name;
+            }
+        }
+
+        return PRIMARY;
+    }
+
+    /**
+     * Associa à thread atual o cliente da requisição: {@code lastWrite} é o horário da última
+     * escrita que ele informou (0 se nenhuma), {@code windowMillis} a janela de read-your-writes
+     * e {@code onWrite} recebe o horário de cada nova escrita, contado a partir do início e de
+     * novo a partir do fim da transação.
+     */
+    public static void bindClient(long lastWrite, long windowMillis, LongConsumer onWrite) {
+        CLIENT.set(new Client(lastWrite, windowMillis, onWrite));
+    }
+
+    /**
+     * Se as leituras da thread atual vão para o primário por read-your-writes. Quem guarda
+     * leituras (cache, single-flight) separa por isso para não servir a esse cliente o que
+     * outro leu de uma réplica atrasada.
+     */
+    public static boolean pinnedToPrimary() {
+        Client client = CLIENT.get();
+        return client != null && System.currentTimeMillis() < client.lastWrite + client.windowMillis;
+    }
+
+    public static void unbindClient() {
+        CLIENT.remove();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    private Connection connect(ConnectionSource source) throws SQLException {
+
+        Object key = determineCurrentLookupKey();
+        if (PRIMARY.equals(key)) {
+            return source.open(primary);
+        }
+
+        Replica replica = replica(key);
+        try {
+            return source.open(replica.dataSource);
+        } catch (SQLException | RuntimeException ex) {
+            markDown(replica, ex);
+            fallbacks.incrementAndGet();
+            return source.open(primary);
+        }
+    }
+
+    public void checkReplicas() {
+
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (!connection.isValid(1)) {
+                    markDown(replica, null);
+                } else if (!replica.healthy) {
+                    replica.healthy = true;
+                    log.info("Réplica {} voltou a responder", replica.name);
+                }
+            } catch (SQLException | RuntimeException ex) {
+                markDown(replica, ex);
+            }
+        }
+    }
+
+    public int healthyReplicas() {
+        return (int) replicas.stream().filter(replica -> replica.healthy).count();
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> close(replica.dataSource));
+        close(primary);
+    }
+
+    private Replica replica(Object key) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(key)) {
+                return replica;
+            }
+        }
+        throw new IllegalStateException("Réplica desconhecida: " + key);
+    }
+
+    private static void close(DataSource dataSource) {
+        if (dataSource instanceof Closeable) {
+            try {
+                ((Closeable) dataSource).close();
+            } catch (IOException ex) {
+                log.warn("Falha ao fechar pool de conexões: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private void markDown(Replica replica, Exception ex) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            log.warn("Réplica {} fora do rodízio: {}", replica.name, ex == null ? "conexão inválida" : ex.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+
+        Connection open(DataSource dataSource) throws SQLException;
+    }
+
+    private static final class Client {
+
+        private final long windowMillis;
+        private final LongConsumer onWrite;
+        private volatile long lastWrite;
+
+        private Client(long lastWrite, long windowMillis, LongConsumer onWrite) {
+            this.lastWrite = lastWrite;
+            this.windowMillis = windowMillis;
+            this.onWrite = onWrite;
+        }
+
+        private void wrote() {
+            lastWrite = System.currentTimeMillis();
+            onWrite.accept(lastWrite);
+        }
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.walleftech.ctdd.configurations;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.management.ManagementFactory;
+
+@Configuration
+@Slf4j
+public class StartupConfiguration {
+
+    /**
+     * Execução de treino do arquivo CDS (perfil Maven faststart): sobe, carrega as classes e encerra.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "book.startup.exit-on-ready", havingValue = "true")
+    public ApplicationListener<ApplicationReadyEvent> exitOnReady() {
+        return event -> {
+            log.warn("Aplicação pronta em {}ms desde o início da JVM, encerrando",
+                    System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        };
+    }
+}
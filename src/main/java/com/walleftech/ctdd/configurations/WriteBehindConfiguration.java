@@ -0,0 +1,15 @@
+package com.walleftech.ctdd.configurations;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Liga o agendador que descarrega o BookWriteBehindQueue; fora do modo write-behind
+ * a aplicação não tem tarefas agendadas.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "book.write-behind.enabled", havingValue = "true")
+public class WriteBehindConfiguration {
+}
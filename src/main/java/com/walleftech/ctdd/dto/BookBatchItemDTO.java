@@ -0,0 +1,23 @@
+package com.walleftech.ctdd.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBatchItemDTO {
+
+    public enum Status { CREATED, DUPLICATED, INVALID }
+
+    private Integer index;
+
+    private Long id;
+
+    private String isbn;
+
+    private Status status;
+
+    private String message;
+}
@@ -0,0 +1,21 @@
+package com.walleftech.ctdd.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBatchReportDTO {
+
+    private Integer received;
+
+    private Integer created;
+
+    private Integer rejected;
+
+    private List<BookBatchItemDTO> items;
+}
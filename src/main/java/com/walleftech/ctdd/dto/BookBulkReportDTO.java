@@ -0,0 +1,13 @@
+package com.walleftech.ctdd.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBulkReportDTO {
+
+    private Integer affected;
+}
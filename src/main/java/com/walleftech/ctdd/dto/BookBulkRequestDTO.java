@@ -0,0 +1,19 @@
+package com.walleftech.ctdd.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBulkRequestDTO {
+
+    private List<Long> ids;
+
+    private BookDTO filter;
+
+    private BookDTO changes;
+}
@@ -0,0 +1,67 @@
+package com.walleftech.ctdd.dto;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.exceptions.BusinessException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class BookCursor {
+
+    public static final List<String> SORT_PROPERTIES = Arrays.asList("id", "title", "author", "isbn");
+
+    private String property;
+
+    private Sort.Direction direction;
+
+    private Long id;
+
+    private String value;
+
+    public static BookCursor after(Book book, Sort.Order order) {
+        return new BookCursor(order.getProperty(), order.getDirection(), book.getId(), sortValue(book, order.getProperty()));
+    }
+
+    public static BookCursor decode(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 4);
+
+            if (parts.length != 4 || !SORT_PROPERTIES.contains(parts[0])) {
+                throw new BusinessException("Cursor inválido!");
+            }
+
+            return new BookCursor(parts[0], Sort.Direction.fromString(parts[1]), Long.valueOf(parts[2]), parts[3]);
+        } catch (IllegalArgumentException ex) {
+            throw new BusinessException("Cursor inválido!");
+        }
+    }
+
+    public String encode() {
+        String raw = property + "|" + direction + "|" + id + "|" + (value == null ? "" : value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Sort.Order toOrder() {
+        return new Sort.Order(direction, property);
+    }
+
+    private static String sortValue(Book book, String property) {
+        switch (property) {
+            case "title":
+                return book.getTitle();
+            case "author":
+                return book.getAuthor();
+            case "isbn":
+                return book.getIsbn();
+            default:
+                return String.valueOf(book.getId());
+        }
+    }
+}
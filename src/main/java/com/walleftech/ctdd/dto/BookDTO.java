@@ -21,4 +21,6 @@ public class BookDTO {
 
     @NotEmpty
     private String isbn;
+
+    private Long version;
 }
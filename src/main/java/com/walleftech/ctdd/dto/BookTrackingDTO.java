@@ -0,0 +1,21 @@
+package com.walleftech.ctdd.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookTrackingDTO {
+
+    public enum Status { PENDING, CREATED, DUPLICATED, FAILED }
+
+    private String trackingId;
+
+    private Long id;
+
+    private String isbn;
+
+    private Status status;
+}
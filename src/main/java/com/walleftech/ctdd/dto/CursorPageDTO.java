@@ -0,0 +1,19 @@
+package com.walleftech.ctdd.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+
+    private List<T> content;
+
+    private Integer size;
+
+    private String next;
+}
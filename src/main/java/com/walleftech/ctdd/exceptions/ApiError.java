@@ -4,27 +4,38 @@ import lombok.Getter;
 import org.springframework.validation.BindingResult;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Corpo imutável das respostas de erro; instâncias de mensagem fixa podem ser criadas
+ * uma vez e devolvidas em toda requisição.
+ */
 @Getter
 public class ApiError {
 
-    private String httpStatus;
-    private String httpMessage;
-    private List<String> errors;
+    private final String httpStatus;
+    private final String httpMessage;
+    private final List<String> errors;
 
     public ApiError(String httpStatus, String httpMessage, BindingResult bindingResult) {
 
         this.httpStatus = httpStatus;
         this.httpMessage = httpMessage;
-        this.errors = new ArrayList<>();
-        bindingResult.getAllErrors().forEach(error -> this.errors.add(error.getDefaultMessage()));
+        List<String> messages = new ArrayList<>(bindingResult.getErrorCount());
+        bindingResult.getAllErrors().forEach(error -> messages.add(error.getDefaultMessage()));
+        this.errors = Collections.unmodifiableList(messages);
     }
 
     public ApiError(String httpStatus, String httpMessage, RuntimeException ex) {
         this.httpStatus = httpStatus;
         this.httpMessage = httpMessage;
-        this.errors = Arrays.asList(ex.getMessage());
+        this.errors = Collections.singletonList(ex.getMessage());
+    }
+
+    public ApiError(String httpStatus, String httpMessage, String error) {
+        this.httpStatus = httpStatus;
+        this.httpMessage = httpMessage;
+        this.errors = Collections.singletonList(error);
     }
 }
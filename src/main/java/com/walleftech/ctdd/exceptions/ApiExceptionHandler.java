@@ -0,0 +1,182 @@
+package com.walleftech.ctdd.exceptions;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tratamento de erros comum a todos os controllers. O JSON dos erros de mensagem fixa
+ * é gerado uma vez, na construção, e reaproveitado; erros com mensagem dinâmica e
+ * clientes que não aceitam JSON (ex.: CBOR) passam pelos conversores normais.
+ */
+@RestControllerAdvice
+@Slf4j
+public class ApiExceptionHandler {
+
+    static final ApiError NOT_FOUND_ERROR =
+            new ApiError("404", "Resource Not Found", ResourceNotFoundException.NOT_FOUND);
+    static final ApiError ISBN_ALREADY_REGISTERED_ERROR =
+            new ApiError("400", "Bad Request", BusinessException.ISBN_ALREADY_REGISTERED);
+    static final ApiError VERSION_CONFLICT_ERROR =
+            new ApiError("409", "Conflict", VersionConflictException.VERSION_CONFLICT);
+    static final ApiError UNREADABLE_BODY_ERROR =
+            new ApiError("400", "Bad Request", "Corpo da requisição inválido!");
+    static final ApiError QUEUE_FULL_ERROR =
+            new ApiError("503", "Service Unavailable", ServiceUnavailableException.QUEUE_FULL);
+
+    private final ObjectMapper objectMapper;
+    private final ErrorLogLimiter errorLog;
+    private final Map<ApiError, byte[]> bodies = new IdentityHashMap<>();
+
+    public ApiExceptionHandler(ObjectMapper objectMapper,
+                               @Value("${book.errors.log-per-second:10}") int errorLogsPerSecond,
+                               @Value("${book.errors.preserialized-bodies:true}") boolean preserializedBodies) {
+        this.objectMapper = objectMapper;
+        this.errorLog = new ErrorLogLimiter(errorLogsPerSecond);
+
+        if (preserializedBodies) {
+            for (ApiError error : Arrays.asList(NOT_FOUND_ERROR, ISBN_ALREADY_REGISTERED_ERROR,
+                    VERSION_CONFLICT_ERROR, UNREADABLE_BODY_ERROR, QUEUE_FULL_ERROR)) {
+                bodies.put(error, serialize(error));
+            }
+        }
+    }
+
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity<Object> handleValidationException(MethodArgumentNotValidException ex, WebRequest request) {
+
+        errorLog.error(log, ex);
+
+        return respond(HttpStatus.BAD_REQUEST, new ApiError("400", "Bad Request", ex.getBindingResult()), request);
+    }
+
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<Object> handleNotReadableException(HttpMessageNotReadableException ex, WebRequest request) {
+
+        errorLog.error(log, ex);
+
+        return respond(HttpStatus.BAD_REQUEST, UNREADABLE_BODY_ERROR, request);
+    }
+
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<Object> handleTypeMismatchException(MethodArgumentTypeMismatchException ex,
+                                                              WebRequest request) {
+
+        errorLog.error(log, ex);
+
+        return respond(HttpStatus.BAD_REQUEST,
+                new ApiError("400", "Bad Request", "Parâmetro inválido: " + ex.getName()), request);
+    }
+
+    @ExceptionHandler(BusinessException.class)
+    public ResponseEntity<Object> handleBusinessException(BusinessException ex, WebRequest request) {
+
+        errorLog.error(log, ex);
+
+        ApiError error = ex == BusinessException.ISBN_ALREADY_REGISTERED
+                ? ISBN_ALREADY_REGISTERED_ERROR : new ApiError("400", "Bad Request", ex);
+
+        return respond(HttpStatus.BAD_REQUEST, error, request);
+    }
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<Object> handleResourceNotFoundException(ResourceNotFoundException ex, WebRequest request) {
+
+        errorLog.error(log, ex);
+
+        ApiError error = ex == ResourceNotFoundException.NOT_FOUND
+                ? NOT_FOUND_ERROR : new ApiError("404", "Resource Not Found", ex);
+
+        return respond(HttpStatus.NOT_FOUND, error, request);
+    }
+
+    @ExceptionHandler(VersionConflictException.class)
+    public ResponseEntity<Object> handleVersionConflictException(VersionConflictException ex, WebRequest request) {
+
+        errorLog.error(log, ex);
+
+        ApiError error = ex == VersionConflictException.VERSION_CONFLICT
+                ? VERSION_CONFLICT_ERROR : new ApiError("409", "Conflict", ex);
+
+        return respond(HttpStatus.CONFLICT, error, request);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<Object> handlePreconditionFailedException(PreconditionFailedException ex,
+                                                                    WebRequest request) {
+
+        errorLog.error(log, ex);
+
+        return respond(HttpStatus.PRECONDITION_FAILED, new ApiError("412", "Precondition Failed", ex), request);
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<Object> handleServiceUnavailableException(ServiceUnavailableException ex,
+                                                                    WebRequest request) {
+
+        errorLog.error(log, ex);
+
+        ApiError error = ex == ServiceUnavailableException.QUEUE_FULL
+                ? QUEUE_FULL_ERROR : new ApiError("503", "Service Unavailable", ex);
+
+        return respond(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1"),
+                error, request);
+    }
+
+    private ResponseEntity<Object> respond(HttpStatus status, ApiError error, WebRequest request) {
+        return respond(ResponseEntity.status(status), error, request);
+    }
+
+    private ResponseEntity<Object> respond(ResponseEntity.BodyBuilder response, ApiError error, WebRequest request) {
+
+        byte[] body = bodies.get(error);
+        if (body == null || !acceptsJson(request.getHeader(HttpHeaders.ACCEPT))) {
+            return response.body(error);
+        }
+
+        return response
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    private byte[] serialize(ApiError error) {
+        try {
+            return objectMapper.writeValueAsBytes(error);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static boolean acceptsJson(String accept) {
+
+        if (accept == null || accept.isEmpty()) {
+            return true;
+        }
+
+        try {
+            List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(mediaTypes);
+            return mediaTypes.isEmpty() || mediaTypes.get(0).isCompatibleWith(MediaType.APPLICATION_JSON);
+        } catch (InvalidMediaTypeException ex) {
+            return true;
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package com.walleftech.ctdd.exceptions;
 
+/**
+ * Exceção de domínio sem stack trace, lançada em toda regra violada pelo cliente.
+ * Mensagens fixas ficam pré-alocadas, como {@link #ISBN_ALREADY_REGISTERED}.
+ */
 public class BusinessException extends RuntimeException {
 
+    public static final BusinessException ISBN_ALREADY_REGISTERED = new BusinessException("Isbn já registrado!");
+
     public BusinessException(String s) {
-        super(s);
+        super(s, null, false, false);
     }
 }
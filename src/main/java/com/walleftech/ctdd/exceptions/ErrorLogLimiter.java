@@ -0,0 +1,65 @@
+package com.walleftech.ctdd.exceptions;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limita quantas linhas de erro por segundo cada tipo de exceção escreve no log.
+ * O excedente é só contado e informado na próxima linha emitida, para que uma rajada
+ * de 404 não custe mais em I/O de log do que a própria resposta.
+ */
+public final class ErrorLogLimiter {
+
+    private final int maxPerSecond;
+    private final ConcurrentMap<Class<?>, Window> windows = new ConcurrentHashMap<>();
+
+    public ErrorLogLimiter(int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    public void error(Logger log, Exception ex) {
+
+        if (!log.isErrorEnabled()) {
+            return;
+        }
+
+        int suppressed = windows.computeIfAbsent(ex.getClass(), type -> new Window()).acquire();
+
+        if (suppressed > 0) {
+            log.error("{} ({} ocorrências suprimidas)", ex.getMessage(), suppressed);
+        } else if (suppressed == 0) {
+            log.error(ex.getMessage());
+        }
+    }
+
+    private final class Window {
+
+        private final AtomicLong second = new AtomicLong();
+        private final AtomicInteger emitted = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        /**
+         * @return -1 se a linha deve ser descartada, senão quantas foram descartadas desde a última emitida
+         */
+        int acquire() {
+
+            long now = System.currentTimeMillis() / 1000;
+            long current = second.get();
+
+            if (now != current && second.compareAndSet(current, now)) {
+                emitted.set(0);
+            }
+
+            if (emitted.incrementAndGet() > maxPerSecond) {
+                suppressed.incrementAndGet();
+                return -1;
+            }
+
+            return suppressed.getAndSet(0);
+        }
+    }
+}
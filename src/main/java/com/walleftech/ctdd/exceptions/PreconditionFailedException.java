@@ -0,0 +1,8 @@
+package com.walleftech.ctdd.exceptions;
+
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message, null, false, false);
+    }
+}
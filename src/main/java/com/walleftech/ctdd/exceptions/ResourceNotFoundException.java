@@ -1,7 +1,14 @@
 package com.walleftech.ctdd.exceptions;
 
-public class ResourceNotFoundException  extends RuntimeException{
+/**
+ * Exceção de domínio sem stack trace: um 404 é resposta esperada, não falha a ser depurada.
+ * Por ser imutável, {@link #NOT_FOUND} pode ser lançada por qualquer thread.
+ */
+public class ResourceNotFoundException extends RuntimeException {
+
+    public static final ResourceNotFoundException NOT_FOUND = new ResourceNotFoundException("Resource Not Found");
+
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,11 @@
+package com.walleftech.ctdd.exceptions;
+
+public class ServiceUnavailableException extends RuntimeException {
+
+    public static final ServiceUnavailableException QUEUE_FULL =
+            new ServiceUnavailableException("Fila de cadastro cheia, tente novamente!");
+
+    public ServiceUnavailableException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,11 @@
+package com.walleftech.ctdd.exceptions;
+
+public class VersionConflictException extends RuntimeException {
+
+    public static final VersionConflictException VERSION_CONFLICT =
+            new VersionConflictException("Livro alterado por outra requisição!");
+
+    public VersionConflictException(String message) {
+        super(message, null, false, false);
+    }
+}
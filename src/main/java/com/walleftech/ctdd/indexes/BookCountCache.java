@@ -0,0 +1,83 @@
+package com.walleftech.ctdd.indexes;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.repositories.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Totais da listagem filtrada por forma de filtro normalizada, com TTL curto.
+ * O total é aproximado dentro da janela do TTL.
+ */
+@Component
+public class BookCountCache {
+
+    public static final String AVOIDED_COUNTER = "book.count.avoided";
+
+    private final BookRepository repository;
+    private final Cache<List<Object>, Long> totals;
+    private final Counter avoidedByCache;
+    private final Counter avoidedBySlice;
+    private final Counter avoidedByPage;
+
+    public BookCountCache(BookRepository repository,
+                          MeterRegistry registry,
+                          @Value("${book.count-cache.ttl-seconds:30}") long ttlSeconds,
+                          @Value("${book.count-cache.maximum-size:1000}") long maximumSize) {
+
+        this.repository = repository;
+        this.totals = Caffeine.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(maximumSize)
+                .build();
+        this.avoidedByCache = Counter.builder(AVOIDED_COUNTER).tag("mode", "cached").register(registry);
+        this.avoidedBySlice = Counter.builder(AVOIDED_COUNTER).tag("mode", "none").register(registry);
+        this.avoidedByPage = Counter.builder(AVOIDED_COUNTER).tag("mode", "page").register(registry);
+    }
+
+    public long count(Book filter) {
+
+        List<Object> key = key(filter);
+        Long total = totals.getIfPresent(key);
+
+        if (total != null) {
+            avoidedByCache.increment();
+            return total;
+        }
+
+        return totals.get(key, ignored -> repository.countByFilter(filter));
+    }
+
+    public void skipped() {
+        avoidedBySlice.increment();
+    }
+
+    /**
+     * Total deduzido da própria página (primeira ou última incompleta), sem consulta nem cache.
+     */
+    public void derivedFromPage() {
+        avoidedByPage.increment();
+    }
+
+    public void invalidateAll() {
+        totals.invalidateAll();
+    }
+
+    static List<Object> key(Book filter) {
+        return Arrays.asList(filter.getId(), filter.getVersion(), lower(filter.getTitle()), lower(filter.getAuthor()),
+                lower(filter.getIsbn()));
+    }
+
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+}
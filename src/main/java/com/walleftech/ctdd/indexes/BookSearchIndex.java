@@ -0,0 +1,233 @@
+package com.walleftech.ctdd.indexes;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.repositories.BookRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+@Component
+@Slf4j
+public class BookSearchIndex {
+
+    private static final int WARM_UP_CHUNK_SIZE = 1000;
+    private static final double MAX_STALE_SECONDS = 1.0;
+    private static final double MIN_STALE_SECONDS = 0.02;
+    private static final String[] FIELDS = {"title", "author"};
+    private static final Map<String, Float> BOOSTS = new HashMap<>();
+
+    static {
+        BOOSTS.put("title", 2f);
+        BOOSTS.put("author", 1f);
+    }
+
+    private final BookRepository repository;
+    private final Analyzer analyzer;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    private final AtomicLong latestGeneration = new AtomicLong(-1);
+
+    public BookSearchIndex(BookRepository repository) throws IOException {
+        this.repository = repository;
+        this.analyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                StandardTokenizer tokenizer = new StandardTokenizer();
+                TokenStream stream = new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer));
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+        };
+        this.writer = new IndexWriter(new ByteBuffersDirectory(), new IndexWriterConfig(analyzer));
+        this.searcherManager = new SearcherManager(writer, null);
+        this.reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager,
+                MAX_STALE_SECONDS, MIN_STALE_SECONDS);
+        this.reopenThread.setName("book-search-reopen");
+        this.reopenThread.setDaemon(true);
+        this.reopenThread.start();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+
+        long start = System.currentTimeMillis();
+
+        repository.forEachChunk(WARM_UP_CHUNK_SIZE,
+                books -> write(books.stream().map(this::toDocument).collect(Collectors.toList())));
+        refresh();
+
+        log.info("Índice de busca carregado em {}ms", System.currentTimeMillis() - start);
+    }
+
+    public void index(Book book) {
+        index(Collections.singletonList(book));
+    }
+
+    /**
+     * Indexa os livros depois do commit da transação corrente (ou já, se não houver uma), sem
+     * esperar a reabertura: quem precisa ver a escrita é a busca, que espera por ela.
+     */
+    public void index(Collection<Book> books) {
+        List<Document> documents = books.stream().map(this::toDocument).collect(Collectors.toList());
+        afterCommit(() -> write(documents));
+    }
+
+    public void remove(Long id) {
+        remove(Collections.singletonList(id));
+    }
+
+    public void remove(Collection<Long> ids) {
+        List<Long> targets = new ArrayList<>(ids);
+        afterCommit(() -> {
+            try {
+                for (Long id : targets) {
+                    written(writer.deleteDocuments(new Term("id", String.valueOf(id))));
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    public void refresh() {
+        try {
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Só espera a reabertura quando há escritas ainda não visíveis; sem elas a busca segue direto.
+     */
+    public Hits search(String text, Pageable pageable) {
+
+        Query query = parse(text);
+        int offset = (int) pageable.getOffset();
+
+        awaitSearchable(latestGeneration.get());
+
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopScoreDocCollector collector = TopScoreDocCollector.create(offset + pageable.getPageSize(), Integer.MAX_VALUE);
+                searcher.search(query, collector);
+
+                TopDocs topDocs = collector.topDocs(offset, pageable.getPageSize());
+                List<Long> ids = new ArrayList<>(topDocs.scoreDocs.length);
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    ids.add(Long.valueOf(searcher.doc(scoreDoc.doc).get("id")));
+                }
+
+                return new Hits(ids, collector.getTotalHits());
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        reopenThread.close();
+        searcherManager.close();
+        writer.close();
+    }
+
+    private void write(List<Document> documents) {
+        try {
+            for (Document document : documents) {
+                written(writer.updateDocument(new Term("id", document.get("id")), document));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void written(long generation) {
+        latestGeneration.accumulateAndGet(generation, Math::max);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void awaitSearchable(long generation) {
+        if (generation < 0 || reopenThread.getSearchingGen() >= generation) {
+            return;
+        }
+        try {
+            reopenThread.waitForGeneration(generation);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Query parse(String text) {
+        MultiFieldQueryParser parser = new MultiFieldQueryParser(FIELDS, analyzer, BOOSTS);
+        parser.setDefaultOperator(QueryParser.Operator.AND);
+        try {
+            return parser.parse(QueryParser.escape(text));
+        } catch (ParseException ex) {
+            return new MatchNoDocsQuery();
+        }
+    }
+
+    private Document toDocument(Book book) {
+        Document document = new Document();
+        document.add(new StringField("id", String.valueOf(book.getId()), Field.Store.YES));
+        if (book.getTitle() != null) {
+            document.add(new TextField("title", book.getTitle(), Field.Store.NO));
+        }
+        if (book.getAuthor() != null) {
+            document.add(new TextField("author", book.getAuthor(), Field.Store.NO));
+        }
+        return document;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Hits {
+
+        private List<Long> ids;
+
+        private long total;
+    }
+}
@@ -0,0 +1,109 @@
+package com.walleftech.ctdd.indexes;
+
+import com.walleftech.ctdd.repositories.BookRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@Component
+@Slf4j
+public class IsbnIndex {
+
+    private static final int WARM_UP_CHUNK_SIZE = 1000;
+
+    private final BookRepository repository;
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private volatile boolean loaded;
+
+    public IsbnIndex(BookRepository repository,
+                     @Value("${book.isbn-index.expected-insertions:1000000}") int expectedInsertions,
+                     @Value("${book.isbn-index.false-positive-rate:0.01}") double falsePositiveRate) {
+
+        this.repository = repository;
+
+        long optimalBits = (long) (-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, (optimalBits + 63) / 64 * 64);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (bitCount / 64));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+
+        long start = System.currentTimeMillis();
+
+        repository.forEachChunk(WARM_UP_CHUNK_SIZE, chunk -> chunk.forEach(book -> add(book.getIsbn())));
+        loaded = true;
+
+        log.info("Índice de isbn carregado em {}ms", System.currentTimeMillis() - start);
+    }
+
+    public boolean mightContain(String isbn) {
+
+        if (!loaded || isbn == null) {
+            return true;
+        }
+
+        long hash1 = hash(isbn);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(String isbn) {
+
+        if (isbn == null) {
+            return;
+        }
+
+        long hash1 = hash(isbn);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,27 @@
+package com.walleftech.ctdd.mappers;
+
+import com.walleftech.ctdd.dto.BookDTO;
+import com.walleftech.ctdd.entities.Book;
+import org.mapstruct.Mapper;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+@Mapper
+public interface BookMapper {
+
+    Book toEntity(BookDTO dto);
+
+    BookDTO toDto(Book book);
+
+    List<BookDTO> toDtoList(List<Book> books);
+
+    default Page<BookDTO> toDtoPage(Page<Book> page) {
+        return page.map(this::toDto);
+    }
+
+    default Slice<BookDTO> toDtoSlice(Slice<Book> slice) {
+        return slice.map(this::toDto);
+    }
+}
@@ -0,0 +1,85 @@
+package com.walleftech.ctdd.metrics;
+
+import com.walleftech.ctdd.exceptions.BusinessException;
+import com.walleftech.ctdd.exceptions.ResourceNotFoundException;
+import com.walleftech.ctdd.exceptions.VersionConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+@Aspect
+@Component
+public class BookMetricsAspect {
+
+    public static final String SERVICE_TIMER = "book.service";
+    public static final String REPOSITORY_TIMER = "book.repository";
+    public static final String ERRORS_COUNTER = "book.errors";
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<Method, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> failureTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> errors = new ConcurrentHashMap<>();
+
+    public BookMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("execution(* com.walleftech.ctdd.services.BookService+.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(SERVICE_TIMER, joinPoint, true);
+    }
+
+    @Around("execution(* com.walleftech.ctdd.repositories.BookRepository+.*(..))")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(REPOSITORY_TIMER, joinPoint, false);
+    }
+
+    private Object time(String name, ProceedingJoinPoint joinPoint, boolean countErrors) throws Throwable {
+
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        long start = System.nanoTime();
+
+        try {
+            Object result = joinPoint.proceed();
+            timers.computeIfAbsent(method, key -> timer(name, key.getName(), "none"))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable ex) {
+            String exception = ex.getClass().getSimpleName();
+            failureTimers.computeIfAbsent(name + '.' + method.getName() + '.' + exception,
+                    key -> timer(name, method.getName(), exception))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            if (countErrors && isDomainError(ex)) {
+                errors.computeIfAbsent(exception, key -> Counter.builder(ERRORS_COUNTER)
+                        .tag("exception", key)
+                        .register(registry))
+                        .increment();
+            }
+            throw ex;
+        }
+    }
+
+    private Timer timer(String name, String method, String exception) {
+        return Timer.builder(name)
+                .tag("method", method)
+                .tag("exception", exception)
+                .register(registry);
+    }
+
+    private boolean isDomainError(Throwable ex) {
+        return ex instanceof BusinessException
+                || ex instanceof ResourceNotFoundException
+                || ex instanceof VersionConflictException;
+    }
+}
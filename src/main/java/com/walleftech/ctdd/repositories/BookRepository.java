@@ -2,8 +2,51 @@ package com.walleftech.ctdd.repositories;
 
 import com.walleftech.ctdd.entities.Book;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface BookRepository extends JpaRepository<Book, Long> {
+import java.util.Collection;
+import java.util.List;
+
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
 
     Boolean existsByIsbn(String isbn);
+
+    @Query("select b.isbn from Book b where b.isbn in :isbns")
+    List<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+    @Transactional
+    @Modifying
+    @Query("update Book b set b.title = :title, b.author = :author, b.isbn = :isbn, " +
+            "b.version = coalesce(b.version, 0) + 1 " +
+            "where b.id = :id and (:version is null or b.version = :version)")
+    int updateBook(@Param("id") Long id,
+                   @Param("title") String title,
+                   @Param("author") String author,
+                   @Param("isbn") String isbn,
+                   @Param("version") Long version);
+
+    @Query("select b.version from Book b where b.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Book b where b.id = :id")
+    int deleteBookById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Book b where b.id in :ids")
+    int deleteBooksByIds(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("update Book b set b.title = coalesce(:title, b.title), b.author = coalesce(:author, b.author), " +
+            "b.version = coalesce(b.version, 0) + 1 " +
+            "where b.id in :ids")
+    int updateBooks(@Param("ids") Collection<Long> ids,
+                    @Param("title") String title,
+                    @Param("author") String author);
 }
@@ -0,0 +1,27 @@
+package com.walleftech.ctdd.repositories;
+
+import com.walleftech.ctdd.dto.BookCursor;
+import com.walleftech.ctdd.entities.Book;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface BookRepositoryCustom {
+
+    void forEachChunk(int chunkSize, Consumer<List<Book>> consumer);
+
+    List<Book> findByFilterAfter(Book filter, Sort.Order order, BookCursor after, int limit);
+
+    List<Long> findIdsByFilter(Book filter, Long afterId, int limit);
+
+    List<Book> findByFilter(Book filter, Pageable pageable, int limit);
+
+    long countByFilter(Book filter);
+
+    Page<Book> findPageByFilter(Book filter, Pageable pageable);
+
+    int patchBook(Long id, Book changes);
+}
@@ -0,0 +1,216 @@
+package com.walleftech.ctdd.repositories;
+
+import com.walleftech.ctdd.dto.BookCursor;
+import com.walleftech.ctdd.entities.Book;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachChunk(int chunkSize, Consumer<List<Book>> consumer) {
+
+        Session session = entityManager.unwrap(Session.class);
+
+        try (ScrollableResults results = session
+                .createQuery("select b from Book b order by b.id", Book.class)
+                .setFetchSize(chunkSize)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+
+            List<Book> chunk = new ArrayList<>(chunkSize);
+
+            while (results.next()) {
+                chunk.add((Book) results.get(0));
+
+                if (chunk.size() == chunkSize) {
+                    consumer.accept(chunk);
+                    chunk.clear();
+                    session.clear();
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                consumer.accept(chunk);
+                session.clear();
+            }
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Book> findByFilterAfter(Book filter, Sort.Order order, BookCursor after, int limit) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = cb.createQuery(Book.class);
+        Root<Book> root = query.from(Book.class);
+
+        List<Predicate> predicates = filterPredicates(cb, root, filter);
+        Path<String> sortKey = root.get(order.getProperty());
+        Path<Long> id = root.get("id");
+
+        if (after != null) {
+            if ("id".equals(order.getProperty())) {
+                predicates.add(order.isAscending() ? cb.greaterThan(id, after.getId()) : cb.lessThan(id, after.getId()));
+            } else {
+                String value = after.getValue();
+                predicates.add(cb.or(
+                        order.isAscending() ? cb.greaterThan(sortKey, value) : cb.lessThan(sortKey, value),
+                        cb.and(cb.equal(sortKey, value),
+                                order.isAscending() ? cb.greaterThan(id, after.getId()) : cb.lessThan(id, after.getId()))));
+            }
+        }
+
+        query.select(root)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(order.isAscending() ? cb.asc(sortKey) : cb.desc(sortKey),
+                        order.isAscending() ? cb.asc(id) : cb.desc(id));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Long> findIdsByFilter(Book filter, Long afterId, int limit) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Book> root = query.from(Book.class);
+        Path<Long> id = root.get("id");
+
+        List<Predicate> predicates = filterPredicates(cb, root, filter);
+        if (afterId != null) {
+            predicates.add(cb.greaterThan(id, afterId));
+        }
+
+        query.select(id)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(cb.asc(id));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Book> findByFilter(Book filter, Pageable pageable, int limit) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = cb.createQuery(Book.class);
+        Root<Book> root = query.from(Book.class);
+
+        query.select(root)
+                .where(filterPredicates(cb, root, filter).toArray(new Predicate[0]))
+                .orderBy(pageable.getSort().isSorted()
+                        ? QueryUtils.toOrders(pageable.getSort(), root, cb)
+                        : Collections.singletonList(cb.asc(root.get("id"))));
+
+        return entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countByFilter(Book filter) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Book> root = query.from(Book.class);
+
+        query.select(cb.count(root))
+                .where(filterPredicates(cb, root, filter).toArray(new Predicate[0]));
+
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    /**
+     * Página e total na mesma transação, com o mesmo filtro; a contagem é pulada quando a
+     * própria página já define o total.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Book> findPageByFilter(Book filter, Pageable pageable) {
+        return PageableExecutionUtils.getPage(findByFilter(filter, pageable, pageable.getPageSize()),
+                pageable, () -> countByFilter(filter));
+    }
+
+    @Override
+    @Transactional
+    public int patchBook(Long id, Book changes) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Book> update = cb.createCriteriaUpdate(Book.class);
+        Root<Book> root = update.from(Book.class);
+        Path<Long> version = root.get("version");
+
+        if (changes.getTitle() != null) {
+            update.set(root.<String>get("title"), changes.getTitle());
+        }
+        if (changes.getAuthor() != null) {
+            update.set(root.<String>get("author"), changes.getAuthor());
+        }
+        if (changes.getIsbn() != null) {
+            update.set(root.<String>get("isbn"), changes.getIsbn());
+        }
+        update.set(version, cb.sum(cb.coalesce(version, 0L), 1L));
+
+        Predicate byId = cb.equal(root.get("id"), id);
+        update.where(changes.getVersion() == null ? byId : cb.and(byId, cb.equal(version, changes.getVersion())));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    static List<Predicate> filterPredicates(CriteriaBuilder cb, Root<Book> root, Book filter) {
+
+        List<Predicate> predicates = new ArrayList<>();
+
+        if (filter == null) {
+            return predicates;
+        }
+        if (filter.getId() != null) {
+            predicates.add(cb.equal(root.get("id"), filter.getId()));
+        }
+        if (filter.getVersion() != null) {
+            predicates.add(cb.equal(root.get("version"), filter.getVersion()));
+        }
+        addContaining(cb, predicates, root.get("title"), filter.getTitle());
+        addContaining(cb, predicates, root.get("author"), filter.getAuthor());
+        addContaining(cb, predicates, root.get("isbn"), filter.getIsbn());
+
+        return predicates;
+    }
+
+    private static void addContaining(CriteriaBuilder cb, List<Predicate> predicates, Path<String> path, String value) {
+        if (value != null) {
+            String escaped = value.toLowerCase()
+                    .replace("\\", "\\\\")
+                    .replace("%", "\\%")
+                    .replace("_", "\\_");
+            predicates.add(cb.like(cb.lower(path), "%" + escaped + "%", '\\'));
+        }
+    }
+}
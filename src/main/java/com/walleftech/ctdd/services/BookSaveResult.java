@@ -0,0 +1,36 @@
+package com.walleftech.ctdd.services;
+
+import com.walleftech.ctdd.entities.Book;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Resultado do cadastro de um item do lote, na mesma posição em que o item foi enviado.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BookSaveResult {
+
+    public enum Status { CREATED, DUPLICATED, FAILED }
+
+    private final Status status;
+
+    private final Book book;
+
+    public static BookSaveResult created(Book book) {
+        return new BookSaveResult(Status.CREATED, book);
+    }
+
+    public static BookSaveResult duplicated(Book book) {
+        return new BookSaveResult(Status.DUPLICATED, book);
+    }
+
+    public static BookSaveResult failed(Book book) {
+        return new BookSaveResult(Status.FAILED, book);
+    }
+
+    public boolean isCreated() {
+        return status == Status.CREATED;
+    }
+}
@@ -1,20 +1,43 @@
 package com.walleftech.ctdd.services;
 
+import com.walleftech.ctdd.dto.BookCursor;
 import com.walleftech.ctdd.entities.Book;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface BookService {
 
     Book save(Book book);
 
+    List<BookSaveResult> saveAll(List<Book> books);
+
     Optional<Book> findById(Long id);
 
     void deleteById(Long id);
 
     Book updateById(Long id, Book book);
 
+    Book patchById(Long id, Book changes);
+
     Page findByFilter(Book book, Pageable pageRequest);
+
+    Slice<Book> findSliceByFilter(Book book, Pageable pageRequest);
+
+    Page<Book> findByFilterWithCachedCount(Book book, Pageable pageRequest);
+
+    Page<Book> search(String text, Pageable pageRequest);
+
+    List<Book> findByFilterAfter(Book book, Sort.Order order, BookCursor after, int limit);
+
+    void exportAll(Consumer<List<Book>> consumer);
+
+    int deleteAll(List<Long> ids, Book filter);
+
+    int updateAll(List<Long> ids, Book filter, Book changes);
 }
@@ -1,72 +1,224 @@
 package com.walleftech.ctdd.services.impl;
 
+import com.walleftech.ctdd.configurations.ReplicaRoutingDataSource;
+import com.walleftech.ctdd.dto.BookCursor;
 import com.walleftech.ctdd.exceptions.BusinessException;
 import com.walleftech.ctdd.exceptions.ResourceNotFoundException;
+import com.walleftech.ctdd.exceptions.VersionConflictException;
+import com.walleftech.ctdd.indexes.BookCountCache;
+import com.walleftech.ctdd.indexes.BookSearchIndex;
+import com.walleftech.ctdd.indexes.IsbnIndex;
 import com.walleftech.ctdd.repositories.BookRepository;
 import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.services.BookSaveResult;
 import com.walleftech.ctdd.services.BookService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
+@CacheConfig(cacheNames = BookServiceImpl.BOOKS_CACHE)
 public class BookServiceImpl implements BookService {
 
+    public static final String BOOKS_CACHE = "books";
+
+    private static final int BATCH_CHUNK_SIZE = 500;
+    private static final int EXPORT_CHUNK_SIZE = 500;
+    private static final int BULK_CHUNK_SIZE = 500;
+    private static final int MAX_SEARCH_WINDOW = 10_000;
+
     BookRepository repository;
+    IsbnIndex isbnIndex;
+    BookSearchIndex searchIndex;
+    BookCountCache countCache;
 
-    public BookServiceImpl(BookRepository repository) {
+    private final SingleFlight<List<Object>, Optional<Book>> findByIdFlight;
+    private final SingleFlight<List<Object>, Page> findByFilterFlight;
+
+    public BookServiceImpl(BookRepository repository, IsbnIndex isbnIndex, BookSearchIndex searchIndex,
+                           BookCountCache countCache, MeterRegistry registry) {
         this.repository = repository;
+        this.isbnIndex = isbnIndex;
+        this.searchIndex = searchIndex;
+        this.countCache = countCache;
+        this.findByIdFlight = new SingleFlight<>("findById", registry);
+        this.findByFilterFlight = new SingleFlight<>("findByFilter", registry);
     }
 
     @Override
+    @CachePut(key = "#root.target.cacheKey(#result.id)")
     public Book save(Book book) {
 
-        log.info("Salvando livro: " + book.getTitle());
+        log.info("Salvando livro: {}", book.getTitle());
+
+        if(isbnIndex.mightContain(book.getIsbn()) && repository.existsByIsbn(book.getIsbn())) {
+            throw BusinessException.ISBN_ALREADY_REGISTERED;
+        }
+
+        Book saved = saveUnique(() -> repository.save(book));
+        isbnIndex.add(saved.getIsbn());
+        searchIndex.index(saved);
+
+        return saved;
+    }
+
+    @Override
+    public List<BookSaveResult> saveAll(List<Book> books) {
+
+        log.info("Salvando lote de {} livros", books.size());
+
+        List<BookSaveResult> results = new ArrayList<>(books.size());
+        Set<String> seenIsbns = new HashSet<>();
+
+        for (int start = 0; start < books.size(); start += BATCH_CHUNK_SIZE) {
+            List<Book> chunk = books.subList(start, Math.min(start + BATCH_CHUNK_SIZE, books.size()));
+
+            Set<String> candidateIsbns = new HashSet<>();
+            chunk.stream()
+                    .map(Book::getIsbn)
+                    .filter(isbnIndex::mightContain)
+                    .forEach(candidateIsbns::add);
+            Set<String> existingIsbns = candidateIsbns.isEmpty()
+                    ? Collections.emptySet() : new HashSet<>(repository.findExistingIsbns(candidateIsbns));
 
-        if(repository.existsByIsbn(book.getIsbn())) {
-            throw new BusinessException("Isbn já registrado!");
+            List<Book> toInsert = new ArrayList<>();
+            List<Integer> positions = new ArrayList<>();
+            for (Book book : chunk) {
+                if (!existingIsbns.contains(book.getIsbn()) && seenIsbns.add(book.getIsbn())) {
+                    positions.add(results.size());
+                    toInsert.add(book);
+                }
+                results.add(BookSaveResult.duplicated(book));
+            }
+
+            List<BookSaveResult> inserted = insertChunk(toInsert);
+            List<Book> chunkSaved = new ArrayList<>(inserted.size());
+            for (int i = 0; i < inserted.size(); i++) {
+                results.set(positions.get(i), inserted.get(i));
+                if (inserted.get(i).isCreated()) {
+                    chunkSaved.add(inserted.get(i).getBook());
+                }
+            }
+            chunkSaved.forEach(book -> isbnIndex.add(book.getIsbn()));
+            searchIndex.index(chunkSaved);
         }
-        return repository.save(book);
+
+        return results;
     }
 
+    /**
+     * Sem transação própria: quem espera no single-flight não pode segurar uma conexão; só o
+     * líder abre a transação somente leitura, dentro do repositório.
+     */
     @Override
+    @Cacheable(key = "#root.target.cacheKey(#id)")
     public Optional<Book> findById(Long id) {
 
-        log.info("Buscando livro de id: " + id);
+        log.info("Buscando livro de id: {}", id);
 
-        Book book = repository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Resource Not Found!"));
+        return findByIdFlight.execute(cacheKey(id), () -> {
+            Book book = repository.findById(id)
+                    .orElseThrow(() -> ResourceNotFoundException.NOT_FOUND);
 
-        return Optional.of(book);
+            return Optional.of(book);
+        });
     }
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(key = "#root.target.cacheKey(true, #id)"),
+            @CacheEvict(key = "#root.target.cacheKey(false, #id)")
+    })
     public void deleteById(Long id) {
 
-        log.info("Deletando livro com id: " + id);
+        log.info("Deletando livro com id: {}", id);
 
-        Book book = findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Resource Not Found"));
-
-        repository.deleteById(book.getId());
+        if (repository.deleteBookById(id) == 0) {
+            throw ResourceNotFoundException.NOT_FOUND;
+        }
+        searchIndex.remove(id);
     }
 
     @Override
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(key = "#root.target.cacheKey(true, #id)"),
+            @CacheEvict(key = "#root.target.cacheKey(false, #id)")
+    })
     public Book updateById(Long id, Book bookUpdated) {
 
-        log.info("Atualizando livro com id: " + id);
+        log.info("Atualizando livro com id: {}", id);
+
+        Long version = bookUpdated.getVersion();
+        int updated = saveUnique(() -> repository.updateBook(id, bookUpdated.getTitle(),
+                bookUpdated.getAuthor(), bookUpdated.getIsbn(), version));
+
+        if (updated == 0) {
+            if (version != null && repository.existsById(id)) {
+                throw VersionConflictException.VERSION_CONFLICT;
+            }
+            throw ResourceNotFoundException.NOT_FOUND;
+        }
 
-        Book book = findById(id)
-                .map(bookUpdate -> repository.save(bookUpdated))
-                .orElseThrow(() -> new ResourceNotFoundException("Resource Not Found"));
+        isbnIndex.add(bookUpdated.getIsbn());
+        bookUpdated.setId(id);
+        // sem If-Match a versão anterior é desconhecida; a linha segue travada até o commit
+        bookUpdated.setVersion(version == null ? repository.findVersionById(id) : version + 1);
+        searchIndex.index(bookUpdated);
 
-        return book;
+        return bookUpdated;
+    }
+
+    @Override
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(key = "#root.target.cacheKey(true, #id)"),
+            @CacheEvict(key = "#root.target.cacheKey(false, #id)")
+    })
+    public Book patchById(Long id, Book changes) {
+
+        log.info("Atualizando parcialmente livro com id: {}", id);
+
+        Long version = changes.getVersion();
+        int updated = saveUnique(() -> repository.patchBook(id, changes));
+
+        if (updated == 0) {
+            if (version != null && repository.existsById(id)) {
+                throw VersionConflictException.VERSION_CONFLICT;
+            }
+            throw ResourceNotFoundException.NOT_FOUND;
+        }
+
+        Book patched = repository.findById(id)
+                .orElseThrow(() -> ResourceNotFoundException.NOT_FOUND);
+
+        isbnIndex.add(patched.getIsbn());
+        searchIndex.index(patched);
+
+        return patched;
     }
 
     @Override
@@ -74,15 +226,244 @@ public class BookServiceImpl implements BookService {
 
         log.info("Buscando livros!");
 
-        Example example = Example.of(filter,
-                ExampleMatcher
-                        .matching()
-                        .withIgnoreCase()
-                        .withIgnoreNullValues()
-                        .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)
-        );
+        // o mesmo filtro das contagens none/cached, para o total não depender do modo; a
+        // transação é aberta pelo líder do single-flight, dentro do repositório
+        return findByFilterFlight.execute(
+                Arrays.asList(ReplicaRoutingDataSource.pinnedToPrimary(), filter, pageRequest),
+                () -> repository.findPageByFilter(filter, pageRequest));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<Book> findSliceByFilter(Book filter, Pageable pageRequest) {
+
+        log.info("Buscando livros sem contagem!");
 
-        return repository.findAll(example, pageRequest);
+        int size = pageRequest.getPageSize();
+        List<Book> result = repository.findByFilter(filter, pageRequest, size + 1);
+        boolean hasNext = result.size() > size;
+
+        countCache.skipped();
+
+        return new SliceImpl<>(hasNext ? result.subList(0, size) : result, pageRequest, hasNext);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Book> findByFilterWithCachedCount(Book filter, Pageable pageRequest) {
+
+        log.info("Buscando livros com contagem em cache!");
+
+        List<Book> result = repository.findByFilter(filter, pageRequest, pageRequest.getPageSize());
+
+        AtomicBoolean counted = new AtomicBoolean();
+        Page<Book> page = PageableExecutionUtils.getPage(result, pageRequest, () -> {
+            counted.set(true);
+            return countCache.count(filter);
+        });
+
+        if (!counted.get()) {
+            countCache.derivedFromPage();
+        }
+        return page;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Book> search(String text, Pageable pageRequest) {
+
+        log.info("Buscando livros por texto: {}", text);
+
+        if (text == null || text.trim().isEmpty()) {
+            throw new BusinessException("Texto de busca não informado!");
+        }
+        if (pageRequest.getOffset() + pageRequest.getPageSize() > MAX_SEARCH_WINDOW) {
+            throw new BusinessException("A busca por texto só alcança os primeiros " + MAX_SEARCH_WINDOW + " resultados!");
+        }
+
+        BookSearchIndex.Hits hits = searchIndex.search(text, pageRequest);
+
+        Map<Long, Book> books = new HashMap<>();
+        repository.findAllById(hits.getIds()).forEach(book -> books.put(book.getId(), book));
+
+        List<Book> ranked = hits.getIds().stream()
+                .map(books::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        return new PageImpl<>(ranked, pageRequest, hits.getTotal());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Book> findByFilterAfter(Book filter, Sort.Order order, BookCursor after, int limit) {
+
+        log.info("Buscando livros a partir do cursor!");
+
+        if (!BookCursor.SORT_PROPERTIES.contains(order.getProperty())) {
+            throw new BusinessException("Ordenação não suportada: " + order.getProperty());
+        }
+
+        return repository.findByFilterAfter(filter, order, after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<List<Book>> consumer) {
+
+        log.info("Exportando catálogo de livros");
+
+        repository.forEachChunk(EXPORT_CHUNK_SIZE, consumer);
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(allEntries = true, beforeInvocation = true),
+            @CacheEvict(allEntries = true)
+    })
+    public int deleteAll(List<Long> ids, Book filter) {
+
+        log.info("Deletando livros em lote");
+
+        int deleted = forEachTargetChunk(ids, filter, chunk -> {
+            int affected = repository.deleteBooksByIds(chunk);
+            searchIndex.remove(chunk);
+            return affected;
+        });
+        countCache.invalidateAll();
+
+        return deleted;
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(allEntries = true, beforeInvocation = true),
+            @CacheEvict(allEntries = true)
+    })
+    public int updateAll(List<Long> ids, Book filter, Book changes) {
+
+        if (changes != null && changes.getIsbn() != null) {
+            throw new BusinessException("Isbn não pode ser alterado em lote!");
+        }
+        if (changes == null || (changes.getTitle() == null && changes.getAuthor() == null)) {
+            throw new BusinessException("Nenhuma alteração informada!");
+        }
+
+        log.info("Atualizando livros em lote");
+
+        int updated = forEachTargetChunk(ids, filter, chunk -> {
+            int affected = repository.updateBooks(chunk, changes.getTitle(), changes.getAuthor());
+            searchIndex.index(repository.findAllById(chunk));
+            return affected;
+        });
+        countCache.invalidateAll();
+
+        return updated;
+    }
+
+    /**
+     * Chave do cache e do single-flight de findById. Um cliente preso ao primário por
+     * read-your-writes usa outra chave: não pode receber um livro que outro cliente leu de
+     * uma réplica atrasada.
+     */
+    public List<Object> cacheKey(Long id) {
+        return cacheKey(ReplicaRoutingDataSource.pinnedToPrimary(), id);
+    }
+
+    public List<Object> cacheKey(boolean pinnedToPrimary, Long id) {
+        return Arrays.asList(pinnedToPrimary, id);
+    }
+
+    /**
+     * Percorre os alvos em blocos: ids informados são deduplicados; por filtro, os ids são
+     * paginados por chave (id &gt; último id do bloco) para não carregar todos de uma vez.
+     * Retorna a soma das linhas afetadas em cada bloco.
+     */
+    private int forEachTargetChunk(List<Long> ids, Book filter, ToIntFunction<List<Long>> action) {
+
+        int affected = 0;
+
+        if (ids != null && !ids.isEmpty()) {
+            List<Long> targets = new ArrayList<>(new LinkedHashSet<>(ids));
+            for (int start = 0; start < targets.size(); start += BULK_CHUNK_SIZE) {
+                affected += action.applyAsInt(targets.subList(start, Math.min(start + BULK_CHUNK_SIZE, targets.size())));
+            }
+            return affected;
+        }
+        if (filter == null || (filter.getId() == null && filter.getTitle() == null
+                && filter.getAuthor() == null && filter.getIsbn() == null)) {
+            throw new BusinessException("Informe os ids ou um filtro!");
+        }
+
+        Long after = null;
+        List<Long> chunk;
+        do {
+            chunk = repository.findIdsByFilter(filter, after, BULK_CHUNK_SIZE);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            affected += action.applyAsInt(chunk);
+            after = chunk.get(chunk.size() - 1);
+        } while (chunk.size() == BULK_CHUNK_SIZE);
+
+        return affected;
+    }
+
+    private List<BookSaveResult> insertChunk(List<Book> books) {
+
+        List<Long> ids = books.stream().map(Book::getId).collect(Collectors.toList());
+        List<Long> versions = books.stream().map(Book::getVersion).collect(Collectors.toList());
+
+        try {
+            return repository.saveAll(books).stream()
+                    .map(BookSaveResult::created)
+                    .collect(Collectors.toList());
+        } catch (DataIntegrityViolationException ex) {
+            log.warn("Lote de {} livros rejeitado pelo banco, gravando um a um: {}", books.size(),
+                    ex.getMostSpecificCause().getMessage());
+        }
+
+        List<BookSaveResult> results = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            // o persist do lote desfeito já atribuiu id e versão às entidades
+            book.setId(ids.get(i));
+            book.setVersion(versions.get(i));
+
+            try {
+                results.add(BookSaveResult.created(repository.save(book)));
+            } catch (DataIntegrityViolationException ex) {
+                if (isIsbnViolation(ex)) {
+                    results.add(BookSaveResult.duplicated(book));
+                } else {
+                    log.warn("Livro de isbn {} rejeitado pelo banco: {}", book.getIsbn(),
+                            ex.getMostSpecificCause().getMessage());
+                    results.add(BookSaveResult.failed(book));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private <T> T saveUnique(Supplier<T> operation) {
+        try {
+            return operation.get();
+        } catch (DataIntegrityViolationException ex) {
+            if (isIsbnViolation(ex)) {
+                throw BusinessException.ISBN_ALREADY_REGISTERED;
+            }
+            throw ex;
+        }
+    }
+
+    private static boolean isIsbnViolation(DataIntegrityViolationException ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String constraint = ((ConstraintViolationException) cause).getConstraintName();
+                return constraint != null && constraint.toLowerCase(Locale.ROOT).contains(Book.ISBN_CONSTRAINT);
+            }
+        }
+        return false;
+    }
 }
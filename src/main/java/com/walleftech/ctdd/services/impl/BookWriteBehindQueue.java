@@ -0,0 +1,599 @@
+package com.walleftech.ctdd.services.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.walleftech.ctdd.dto.BookTrackingDTO;
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.exceptions.BusinessException;
+import com.walleftech.ctdd.exceptions.ServiceUnavailableException;
+import com.walleftech.ctdd.indexes.IsbnIndex;
+import com.walleftech.ctdd.repositories.BookRepository;
+import com.walleftech.ctdd.services.BookSaveResult;
+import com.walleftech.ctdd.services.BookService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cadastro assíncrono (write-behind): o livro é aceito num journal local só de append e
+ * gravado no banco em lotes por um agendador. O journal registra cada aceite ("A") e cada
+ * item resolvido ("C"), seja criado, duplicado ou recusado de vez; ao subir, os aceites sem
+ * confirmação voltam para a fila. Só falhas transitórias fazem um item voltar para a fila.
+ * <p>
+ * O fsync é feito em grupo: quem aceita só espera até que um force cubra a sua linha, e um
+ * único force cobre tudo o que foi escrito até ele. O journal é dividido em segmentos
+ * (journal.1, journal.2...): o ativo roda ao passar de book.write-behind.segment-bytes, e os
+ * mais antigos são apagados assim que todos os seus aceites forem resolvidos.
+ */
+@Component
+@ConditionalOnProperty(name = "book.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class BookWriteBehindQueue {
+
+    public static final String PENDING_GAUGE = "book.write-behind.pending";
+    public static final String REJECTED_COUNTER = "book.write-behind.rejected";
+
+    private static final String ACCEPTED = "A";
+    private static final String COMMITTED = "C";
+    private static final int MAX_COLUMN_LENGTH = 255;
+
+    private final BookService service;
+    private final BookRepository repository;
+    private final IsbnIndex isbnIndex;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final Path journalPath;
+    private final int capacity;
+    private final int batchSize;
+    private final boolean fsync;
+    private final long segmentBytes;
+
+    private final BlockingDeque<JournalEntry> queue = new LinkedBlockingDeque<>();
+    private final ConcurrentMap<String, JournalEntry> pending = new ConcurrentHashMap<>();
+    private final Set<String> pendingIsbns = ConcurrentHashMap.newKeySet();
+    private final Cache<String, BookTrackingDTO> completed;
+    private final Object journalLock = new Object();
+    private final Object syncLock = new Object();
+    private final Object flushLock = new Object();
+
+    // aceites ainda não resolvidos por segmento, do mais antigo ao ativo; protegido por journalLock
+    private final TreeMap<Long, Integer> outstanding = new TreeMap<>();
+
+    private Semaphore permits;
+    private volatile FileChannel journal;
+    private long activeSegment;
+    private volatile long written;
+    private long synced;
+    private Counter rejectedFull;
+    private Counter rejectedDuplicated;
+
+    public BookWriteBehindQueue(BookService service, BookRepository repository, IsbnIndex isbnIndex,
+                                ObjectMapper objectMapper, MeterRegistry registry,
+                                @Value("${book.write-behind.journal:book-journal.log}") String journal,
+                                @Value("${book.write-behind.capacity:10000}") int capacity,
+                                @Value("${book.write-behind.batch-size:500}") int batchSize,
+                                @Value("${book.write-behind.fsync:true}") boolean fsync,
+                                @Value("${book.write-behind.segment-bytes:16777216}") long segmentBytes,
+                                @Value("${book.write-behind.status-ttl-minutes:10}") long statusTtlMinutes) {
+        this.service = service;
+        this.repository = repository;
+        this.isbnIndex = isbnIndex;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        this.journalPath = Paths.get(journal);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.fsync = fsync;
+        this.segmentBytes = segmentBytes;
+        this.completed = Caffeine.newBuilder()
+                .expireAfterWrite(statusTtlMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+
+        List<JournalEntry> recovered = replay();
+
+        // pode começar negativo se o journal trouxer mais pendências que a capacidade
+        permits = new Semaphore(capacity - recovered.size());
+        recovered.forEach(entry -> {
+            pending.put(entry.getTrackingId(), entry);
+            pendingIsbns.add(entry.getIsbn());
+            queue.add(entry);
+        });
+
+        journal = openSegment(activeSegment);
+
+        rejectedFull = Counter.builder(REJECTED_COUNTER).tag("reason", "full").register(registry);
+        rejectedDuplicated = Counter.builder(REJECTED_COUNTER).tag("reason", "duplicated").register(registry);
+        Gauge.builder(PENDING_GAUGE, pending, Map::size).register(registry);
+
+        if (!recovered.isEmpty()) {
+            log.info("{} livros pendentes recuperados do journal", recovered.size());
+        }
+    }
+
+    public BookTrackingDTO accept(Book book) {
+
+        // o livro só é gravado depois da resposta: o que o banco recusaria é recusado aqui
+        validate(book);
+
+        if (!permits.tryAcquire()) {
+            rejectedFull.increment();
+            throw ServiceUnavailableException.QUEUE_FULL;
+        }
+
+        if (!pendingIsbns.add(book.getIsbn())) {
+            permits.release();
+            rejectedDuplicated.increment();
+            throw BusinessException.ISBN_ALREADY_REGISTERED;
+        }
+
+        JournalEntry entry = new JournalEntry(ACCEPTED, UUID.randomUUID().toString(),
+                book.getTitle(), book.getAuthor(), book.getIsbn());
+
+        try {
+            if (isbnIndex.mightContain(book.getIsbn()) && repository.existsByIsbn(book.getIsbn())) {
+                rejectedDuplicated.increment();
+                throw BusinessException.ISBN_ALREADY_REGISTERED;
+            }
+
+            long sequence;
+            synchronized (journalLock) {
+                sequence = append(Collections.singletonList(entry));
+            }
+            try {
+                awaitDurable(sequence);
+            } catch (RuntimeException ex) {
+                abandon(entry);
+                throw ex;
+            }
+
+            pending.put(entry.getTrackingId(), entry);
+            queue.add(entry);
+        } catch (RuntimeException ex) {
+            pendingIsbns.remove(book.getIsbn());
+            permits.release();
+            throw ex;
+        }
+
+        return tracking(entry, BookTrackingDTO.Status.PENDING, null);
+    }
+
+    public Optional<BookTrackingDTO> status(String trackingId) {
+
+        JournalEntry entry = pending.get(trackingId);
+        if (entry != null) {
+            return Optional.of(tracking(entry, BookTrackingDTO.Status.PENDING, null));
+        }
+
+        return Optional.ofNullable(completed.getIfPresent(trackingId));
+    }
+
+    @Scheduled(fixedDelayString = "${book.write-behind.flush-interval-ms:200}")
+    public void flush() {
+
+        synchronized (flushLock) {
+            List<JournalEntry> batch = new ArrayList<>(batchSize);
+
+            // roda a cada lote: com ingestão contínua a fila pode nunca esvaziar
+            while (queue.drainTo(batch, batchSize) > 0) {
+                if (!flushBatch(batch)) {
+                    return;
+                }
+                batch.clear();
+                roll();
+            }
+
+            roll();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        flush();
+        synchronized (journalLock) {
+            synchronized (syncLock) {
+                if (fsync) {
+                    journal.force(false);
+                }
+                journal.close();
+            }
+        }
+    }
+
+    private boolean flushBatch(List<JournalEntry> batch) {
+
+        List<Book> books = new ArrayList<>(batch.size());
+        batch.forEach(entry -> books.add(toBook(entry)));
+
+        List<BookSaveResult> results;
+        try {
+            results = service.saveAll(books);
+        } catch (RuntimeException ex) {
+            if (isTransient(ex)) {
+                log.error("Falha ao gravar lote de {} livros pendentes, nova tentativa no próximo ciclo: {}",
+                        batch.size(), ex.getMessage());
+                requeue(batch);
+                return false;
+            }
+            log.warn("Lote de {} livros pendentes rejeitado, gravando um a um: {}", batch.size(), ex.getMessage());
+            return flushOneByOne(batch);
+        }
+
+        complete(batch, results);
+        return true;
+    }
+
+    private boolean flushOneByOne(List<JournalEntry> batch) {
+
+        List<BookSaveResult> results = new ArrayList<>(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            Book book = toBook(batch.get(i));
+            try {
+                results.add(service.saveAll(Collections.singletonList(book)).get(0));
+            } catch (RuntimeException ex) {
+                if (isTransient(ex)) {
+                    log.error("Falha ao gravar livro pendente de isbn {}, nova tentativa no próximo ciclo: {}",
+                            book.getIsbn(), ex.getMessage());
+                    complete(batch.subList(0, i), results);
+                    requeue(batch.subList(i, batch.size()));
+                    return false;
+                }
+                log.error("Livro pendente de isbn {} descartado: {}", book.getIsbn(), ex.getMessage());
+                results.add(BookSaveResult.failed(book));
+            }
+        }
+
+        complete(batch, results);
+        return true;
+    }
+
+    private void complete(List<JournalEntry> entries, List<BookSaveResult> results) {
+
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        int created = 0;
+        List<JournalEntry> commits = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            JournalEntry entry = entries.get(i);
+            BookSaveResult result = results.get(i);
+            if (result.isCreated()) {
+                created++;
+            }
+
+            completed.put(entry.getTrackingId(), tracking(entry, trackingStatus(result.getStatus()),
+                    result.isCreated() ? result.getBook().getId() : null));
+            commits.add(new JournalEntry(COMMITTED, entry.getTrackingId(), null, null, null));
+        }
+
+        synchronized (journalLock) {
+            append(commits);
+            entries.forEach(entry -> outstanding.merge(entry.getSegment(), -1, Integer::sum));
+        }
+
+        entries.forEach(entry -> {
+            pending.remove(entry.getTrackingId());
+            pendingIsbns.remove(entry.getIsbn());
+        });
+        permits.release(entries.size());
+
+        log.info("Lote de {} livros pendentes gravado, {} criados", entries.size(), created);
+    }
+
+    private void requeue(List<JournalEntry> entries) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            queue.addFirst(entries.get(i));
+        }
+    }
+
+    /**
+     * O aceite cujo force falhou não foi confirmado ao cliente: marca como resolvido para que
+     * não volte da fila ao subir. Se nem isso puder ser escrito, o replay o regrava.
+     */
+    private void abandon(JournalEntry entry) {
+        synchronized (journalLock) {
+            outstanding.merge(entry.getSegment(), -1, Integer::sum);
+            try {
+                append(Collections.singletonList(new JournalEntry(COMMITTED, entry.getTrackingId(), null, null, null)));
+            } catch (UncheckedIOException ex) {
+                log.warn("Não foi possível descartar o aceite {} no journal: {}", entry.getTrackingId(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Roda o segmento ativo quando ele passa do limite ou quando não há aceite pendente em
+     * nenhum segmento, e apaga, do mais antigo em diante, os segmentos já resolvidos. Um
+     * segmento só sai depois de todos os anteriores, para que nenhum "C" apagado deixe um
+     * "A" mais antigo sem confirmação.
+     */
+    private void roll() {
+        synchronized (journalLock) {
+            try {
+                long size = journal.size();
+                boolean drained = outstanding.values().stream().allMatch(count -> count == 0);
+                if (size >= segmentBytes || (size > 0 && drained)) {
+                    synchronized (syncLock) {
+                        if (fsync) {
+                            journal.force(false);
+                        }
+                        synced = written;
+                        journal.close();
+                    }
+                    activeSegment++;
+                    outstanding.put(activeSegment, 0);
+                    journal = openSegment(activeSegment);
+                }
+
+                while (outstanding.firstKey() < activeSegment && outstanding.firstEntry().getValue() == 0) {
+                    Files.deleteIfExists(segment(outstanding.pollFirstEntry().getKey()));
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Escreve as linhas no segmento ativo sem esperar o disco e devolve a sequência que
+     * {@link #awaitDurable(long)} precisa alcançar. Chamado com journalLock.
+     */
+    private long append(List<JournalEntry> entries) {
+        try {
+            StringBuilder lines = new StringBuilder();
+            for (JournalEntry entry : entries) {
+                lines.append(objectMapper.writeValueAsString(entry)).append('\n');
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+
+            for (JournalEntry entry : entries) {
+                if (ACCEPTED.equals(entry.getOp())) {
+                    entry.setSegment(activeSegment);
+                    outstanding.merge(activeSegment, 1, Integer::sum);
+                }
+            }
+            return ++written;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Group commit: quem chega enquanto outro faz o force espera por ele e, se já foi coberto,
+     * volta sem um novo fsync.
+     */
+    private void awaitDurable(long sequence) {
+        if (!fsync) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= sequence) {
+                return;
+            }
+            long target = written;
+            try {
+                journal.force(false);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            synced = target;
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segment(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path segment(long number) {
+        return journalPath.resolveSibling(journalPath.getFileName() + "." + number);
+    }
+
+    /**
+     * Segmentos existentes em ordem; o journal de arquivo único das versões anteriores vem primeiro.
+     */
+    private List<Path> existingSegments() throws IOException {
+
+        String prefix = journalPath.getFileName() + ".";
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        Path directory = journalPath.toAbsolutePath().getParent();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    segments.put(Long.valueOf(suffix), file);
+                }
+            }
+        }
+
+        List<Path> ordered = new ArrayList<>();
+        if (Files.exists(journalPath)) {
+            ordered.add(journalPath);
+        }
+        ordered.addAll(segments.values());
+        return ordered;
+    }
+
+    private List<JournalEntry> replay() throws IOException {
+
+        List<Path> segments = existingSegments();
+        Map<String, JournalEntry> accepted = new LinkedHashMap<>();
+
+        for (Path segment : segments) {
+            try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JournalEntry entry;
+                    try {
+                        entry = objectMapper.readValue(line, JournalEntry.class);
+                    } catch (IOException ex) {
+                        // a última linha pode ter ficado incompleta se o processo caiu no meio da escrita
+                        log.warn("Linha inválida ignorada no journal de cadastro: {}", ex.getMessage());
+                        continue;
+                    }
+
+                    if (ACCEPTED.equals(entry.getOp())) {
+                        accepted.put(entry.getTrackingId(), entry);
+                    } else {
+                        accepted.remove(entry.getTrackingId());
+                    }
+                }
+            }
+        }
+
+        // as pendências vão para um segmento novo antes de os antigos saírem
+        activeSegment = segments.stream()
+                .filter(segment -> !segment.equals(journalPath))
+                .mapToLong(segment -> Long.parseLong(segment.getFileName().toString()
+                        .substring(journalPath.getFileName().toString().length() + 1)))
+                .max().orElse(0) + 1;
+
+        List<JournalEntry> recovered = new ArrayList<>(accepted.values());
+        rewrite(recovered);
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+
+        recovered.forEach(entry -> entry.setSegment(activeSegment));
+        outstanding.put(activeSegment, recovered.size());
+
+        return recovered;
+    }
+
+    private void rewrite(List<JournalEntry> entries) throws IOException {
+
+        Path target = segment(activeSegment);
+        Path compacted = target.resolveSibling(target.getFileName() + ".tmp");
+
+        List<String> lines = new ArrayList<>(entries.size());
+        for (JournalEntry entry : entries) {
+            lines.add(objectMapper.writeValueAsString(entry));
+        }
+        Files.write(compacted, lines, StandardCharsets.UTF_8);
+        Files.move(compacted, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Book toBook(JournalEntry entry) {
+        return Book.builder()
+                .title(entry.getTitle())
+                .author(entry.getAuthor())
+                .isbn(entry.getIsbn())
+                .build();
+    }
+
+    /**
+     * Só falhas de conexão, lock ou timeout voltam para a fila; o resto não se resolve
+     * com uma nova tentativa.
+     */
+    private static boolean isTransient(RuntimeException ex) {
+        return ex instanceof TransientDataAccessException
+                || ex instanceof RecoverableDataAccessException
+                || ex instanceof DataAccessResourceFailureException
+                || ex instanceof CannotCreateTransactionException;
+    }
+
+    private static BookTrackingDTO.Status trackingStatus(BookSaveResult.Status status) {
+        switch (status) {
+            case CREATED:
+                return BookTrackingDTO.Status.CREATED;
+            case DUPLICATED:
+                return BookTrackingDTO.Status.DUPLICATED;
+            default:
+                return BookTrackingDTO.Status.FAILED;
+        }
+    }
+
+    private static void validate(Book book) {
+        checkLength("title", book.getTitle());
+        checkLength("author", book.getAuthor());
+        checkLength("isbn", book.getIsbn());
+    }
+
+    private static void checkLength(String field, String value) {
+        if (value != null && value.length() > MAX_COLUMN_LENGTH) {
+            throw new BusinessException(field + " excede " + MAX_COLUMN_LENGTH + " caracteres!");
+        }
+    }
+
+    private static BookTrackingDTO tracking(JournalEntry entry, BookTrackingDTO.Status status, Long id) {
+        return BookTrackingDTO.builder()
+                .trackingId(entry.getTrackingId())
+                .isbn(entry.getIsbn())
+                .status(status)
+                .id(id)
+                .build();
+    }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    static class JournalEntry {
+
+        private String op;
+
+        private String trackingId;
+
+        private String title;
+
+        private String author;
+
+        private String isbn;
+
+        @JsonIgnore
+        private long segment;
+
+        JournalEntry(String op, String trackingId, String title, String author, String isbn) {
+            this.op = op;
+            this.trackingId = trackingId;
+            this.title = title;
+            this.author = author;
+            this.isbn = isbn;
+        }
+    }
+}
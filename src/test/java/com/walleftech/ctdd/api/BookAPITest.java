@@ -1,11 +1,19 @@
 package com.walleftech.ctdd.api;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.walleftech.ctdd.dto.BookCursor;
 import com.walleftech.ctdd.dto.BookDTO;
+import com.walleftech.ctdd.dto.BookTrackingDTO;
 import com.walleftech.ctdd.entities.Book;
 import com.walleftech.ctdd.exceptions.BusinessException;
 import com.walleftech.ctdd.exceptions.ResourceNotFoundException;
+import com.walleftech.ctdd.exceptions.ServiceUnavailableException;
+import com.walleftech.ctdd.exceptions.VersionConflictException;
+import com.walleftech.ctdd.services.BookSaveResult;
 import com.walleftech.ctdd.services.BookService;
+import com.walleftech.ctdd.services.impl.BookWriteBehindQueue;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -19,6 +27,8 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -27,12 +37,18 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.InstanceOfAssertFactories.PATH;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -48,6 +64,9 @@ public class BookAPITest {
     @MockBean
     private BookService service;
 
+    @MockBean
+    private BookWriteBehindQueue writeBehind;
+
     private static final String PATH = "/v1/api/books";
 
     @Test
@@ -205,8 +224,8 @@ public class BookAPITest {
     @DisplayName("Deve lançar uma exceção de recurso não encontrado quando tentar deletar um livro que não existe")
     public void shouldThrowRecourseNotFoundExceptionTest() throws Exception {
 
-        BDDMockito.given(service.findById(anyLong()))
-                .willThrow(new ResourceNotFoundException("Resource Not Found"));
+        BDDMockito.willThrow(new ResourceNotFoundException("Resource Not Found"))
+                .given(service).deleteById(anyLong());
 
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
                 .delete(PATH.concat("/1"))
@@ -288,4 +307,618 @@ public class BookAPITest {
                 .andExpect( jsonPath("pageable.pageSize").value(100) )
                 .andExpect( jsonPath("pageable.pageNumber").value(0) );
     }
+
+    @Test
+    @DisplayName("Deve salvar um lote de livros e retornar o resultado de cada item")
+    public void createBatchTest() throws Exception {
+
+        BookDTO valido = BookDTO.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("1").build();
+        BookDTO repetido = BookDTO.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("1").build();
+        BookDTO invalido = BookDTO.builder().title("Pai Rico").build();
+
+        BDDMockito.given(service.saveAll(Mockito.anyList())).willAnswer(invocation -> {
+            List<Book> books = invocation.getArgument(0);
+            books.get(0).setId(Long.valueOf(1));
+            return Arrays.asList(BookSaveResult.created(books.get(0)), BookSaveResult.duplicated(books.get(1)));
+        });
+
+        String json = new ObjectMapper().writeValueAsString(Arrays.asList(valido, repetido, invalido));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(PATH.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("received").value(3))
+                .andExpect(jsonPath("created").value(1))
+                .andExpect(jsonPath("rejected").value(2))
+                .andExpect(jsonPath("items[0].status").value("CREATED"))
+                .andExpect(jsonPath("items[0].id").value(1))
+                .andExpect(jsonPath("items[1].status").value("DUPLICATED"))
+                .andExpect(jsonPath("items[2].status").value("INVALID"));
+    }
+
+    @Test
+    @DisplayName("Deve salvar um lote de livros enviado em NDJSON")
+    public void createBatchFromNdjsonTest() throws Exception {
+
+        BDDMockito.given(service.saveAll(Mockito.anyList())).willAnswer(invocation -> invocation.<List<Book>>getArgument(0)
+                .stream().map(BookSaveResult::created).collect(Collectors.toList()));
+
+        String ndjson = "{\"title\":\"Fábrica de Valores\",\"author\":\"Evandro Guedes\",\"isbn\":\"1\"}\n"
+                + "{\"title\":\"Pai Rico\",\"author\":\"Robert Kiyosaki\",\"isbn\":\"2\"}\n";
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(PATH.concat("/batch"))
+                .contentType(BookAPI.APPLICATION_NDJSON_VALUE)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(ndjson);
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("received").value(2))
+                .andExpect(jsonPath("created").value(2))
+                .andExpect(jsonPath("items", hasSize(2)));
+    }
+
+    @Test
+    @DisplayName("Deve exportar o catálogo em NDJSON")
+    public void exportNdjsonTest() throws Exception {
+
+        Book book = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123").build();
+
+        Mockito.doAnswer(invocation -> {
+            Consumer<List<Book>> consumer = invocation.getArgument(0);
+            consumer.accept(Arrays.asList(book));
+            consumer.accept(Arrays.asList(book));
+            return null;
+        }).when(service).exportAll(Mockito.any());
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(PATH.concat("/export"));
+
+        String body = mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(BookAPI.APPLICATION_NDJSON_VALUE))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(new ObjectMapper().readValue(lines[1], BookDTO.class).getIsbn()).isEqualTo("123123");
+    }
+
+    @Test
+    @DisplayName("Deve exportar o catálogo em CSV")
+    public void exportCsvTest() throws Exception {
+
+        Book book = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores, Vol. 1")
+                .author("Evandro Guedes")
+                .isbn("123123").build();
+
+        Mockito.doAnswer(invocation -> {
+            Consumer<List<Book>> consumer = invocation.getArgument(0);
+            consumer.accept(Arrays.asList(book));
+            return null;
+        }).when(service).exportAll(Mockito.any());
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(PATH.concat("/export?format=csv"));
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string("id,title,author,isbn\n"
+                        + "1,\"Fábrica de Valores, Vol. 1\",Evandro Guedes,123123\n"));
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros por cursor e retornar o próximo cursor")
+    public void findByFiltersAfterTest() throws Exception {
+
+        Book first = Book.builder().id(Long.valueOf(1)).title("A").author("Evandro Guedes").isbn("1").build();
+        Book second = Book.builder().id(Long.valueOf(2)).title("B").author("Evandro Guedes").isbn("2").build();
+
+        BDDMockito.given(service.findByFilterAfter(Mockito.any(Book.class), Mockito.eq(Sort.Order.asc("title")),
+                Mockito.isNull(), Mockito.eq(2)))
+                .willReturn(Arrays.asList(first, second));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(PATH.concat("?author=Guedes&after=&size=1&sort=title"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        String next = BookCursor.after(first, Sort.Order.asc("title")).encode();
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(1)))
+                .andExpect(jsonPath("content[0].isbn").value("1"))
+                .andExpect(jsonPath("next").value(next))
+                .andExpect(jsonPath("totalElements").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Deve lançar uma exceção de negócio quando o cursor for inválido")
+    public void findByFiltersAfterWithInvalidCursorTest() throws Exception {
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(PATH.concat("?after=invalido"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc.perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Cursor inválido!"));
+    }
+
+    @Test
+    @DisplayName("Deve retornar conflito quando o livro foi alterado por outra requisição")
+    public void updateBookWithVersionConflictTest() throws Exception {
+
+        BookDTO dto = BookDTO.builder()
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123")
+                .version(Long.valueOf(2)).build();
+
+        BDDMockito.given(service.updateById(Mockito.eq(Long.valueOf(1)), Mockito.any(Book.class)))
+                .willThrow(new VersionConflictException("Livro alterado por outra requisição!"));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .put(PATH.concat("/1"))
+                .content(new ObjectMapper().writeValueAsString(dto))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON);
+
+        mvc.perform(request)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("httpStatus").value("409"))
+                .andExpect(jsonPath("httpMessage").value("Conflict"));
+
+        Mockito.verify(service, Mockito.never()).findById(anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros por texto")
+    public void searchTest() throws Exception {
+
+        Book book = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123").build();
+
+        BDDMockito.given(service.search(Mockito.eq("fabrica"), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 20), 1));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(PATH.concat("?q=fabrica"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(1)))
+                .andExpect(jsonPath("content[0].title").value(book.getTitle()))
+                .andExpect(jsonPath("totalElements").value(1));
+    }
+
+    @Test
+    @DisplayName("Deve deletar livros em lote e retornar a quantidade afetada")
+    public void deleteAllTest() throws Exception {
+
+        BDDMockito.given(service.deleteAll(Mockito.anyList(), Mockito.any())).willReturn(3);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .delete(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("{\"ids\":[1,2,3]}");
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("affected").value(3));
+    }
+
+    @Test
+    @DisplayName("Deve atualizar livros em lote por filtro e retornar a quantidade afetada")
+    public void updateAllTest() throws Exception {
+
+        BDDMockito.given(service.updateAll(Mockito.isNull(), Mockito.any(Book.class), Mockito.any(Book.class)))
+                .willReturn(2);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .patch(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("{\"filter\":{\"author\":\"guedes\"},\"changes\":{\"author\":\"Evandro Guedes\"}}");
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("affected").value(2));
+    }
+
+    @Test
+    @DisplayName("Deve retornar 304 quando o ETag do livro não mudou")
+    public void findByIdNotModifiedTest() throws Exception {
+
+        Book book = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123")
+                .version(Long.valueOf(3)).build();
+
+        BDDMockito.given(service.findById(Long.valueOf(1))).willReturn(Optional.of(book));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("/1")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"1-3\""));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("/1"))
+                .accept(MediaType.APPLICATION_JSON)
+                .header("If-None-Match", "\"1-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("Deve retornar 304 quando a página filtrada não mudou")
+    public void findByFiltersNotModifiedTest() throws Exception {
+
+        Book book = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123")
+                .version(Long.valueOf(0)).build();
+
+        BDDMockito.given(service.findByFilter(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 20), 1));
+
+        String etag = mvc.perform(MockMvcRequestBuilders.get(PATH.concat("?author=guedes")))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("?author=guedes")).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        book.setVersion(Long.valueOf(1));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("?author=guedes")).header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Deve atualizar usando a versão do If-Match e devolver o novo ETag")
+    public void updateBookWithIfMatchTest() throws Exception {
+
+        BookDTO dto = BookDTO.builder()
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123").build();
+
+        BDDMockito.given(service.updateById(Mockito.eq(Long.valueOf(1)), Mockito.any(Book.class)))
+                .willAnswer(invocation -> {
+                    Book book = invocation.getArgument(1);
+                    assertThat(book.getVersion()).isEqualTo(4);
+                    book.setId(Long.valueOf(1));
+                    book.setVersion(Long.valueOf(5));
+                    return book;
+                });
+
+        mvc.perform(MockMvcRequestBuilders.put(PATH.concat("/1"))
+                .content(new ObjectMapper().writeValueAsString(dto))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Match", "\"1-4\""))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"1-5\""));
+    }
+
+    @Test
+    @DisplayName("Deve retornar 412 quando o If-Match estiver desatualizado")
+    public void updateBookWithStaleIfMatchTest() throws Exception {
+
+        BookDTO dto = BookDTO.builder()
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123").build();
+
+        BDDMockito.given(service.updateById(Mockito.eq(Long.valueOf(1)), Mockito.any(Book.class)))
+                .willThrow(new VersionConflictException("Livro alterado por outra requisição!"));
+
+        mvc.perform(MockMvcRequestBuilders.put(PATH.concat("/1"))
+                .content(new ObjectMapper().writeValueAsString(dto))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Match", "\"1-4\""))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("httpStatus").value("412"));
+
+        mvc.perform(MockMvcRequestBuilders.put(PATH.concat("/1"))
+                .content(new ObjectMapper().writeValueAsString(dto))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Match", "\"2-4\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    @DisplayName("Deve aceitar If-Match * e listas de ETags")
+    public void updateBookWithWildcardAndListIfMatchTest() throws Exception {
+
+        BookDTO dto = BookDTO.builder()
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123").build();
+
+        List<Long> versions = new ArrayList<>();
+        BDDMockito.given(service.findById(Long.valueOf(1)))
+                .willReturn(Optional.of(Book.builder().id(Long.valueOf(1)).version(Long.valueOf(4)).build()));
+        BDDMockito.given(service.updateById(Mockito.eq(Long.valueOf(1)), Mockito.any(Book.class)))
+                .willAnswer(invocation -> {
+                    Book book = invocation.getArgument(1);
+                    versions.add(book.getVersion());
+                    book.setId(Long.valueOf(1));
+                    book.setVersion(Long.valueOf(5));
+                    return book;
+                });
+
+        mvc.perform(MockMvcRequestBuilders.put(PATH.concat("/1"))
+                .content(new ObjectMapper().writeValueAsString(dto))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Match", "*"))
+                .andExpect(status().isOk());
+
+        mvc.perform(MockMvcRequestBuilders.put(PATH.concat("/1"))
+                .content(new ObjectMapper().writeValueAsString(dto))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Match", "\"1-3\", \"1-4\""))
+                .andExpect(status().isOk());
+
+        mvc.perform(MockMvcRequestBuilders.put(PATH.concat("/1"))
+                .content(new ObjectMapper().writeValueAsString(dto))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Match", "\"1-2\", \"1-3\""))
+                .andExpect(status().isPreconditionFailed());
+
+        assertThat(versions).containsExactly(null, Long.valueOf(4));
+    }
+
+    @Test
+    @DisplayName("Deve aplicar um merge patch validando apenas os campos enviados")
+    public void patchBookTest() throws Exception {
+
+        Book patched = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores Vol. 2")
+                .author("Evandro Guedes")
+                .isbn("123123")
+                .version(Long.valueOf(4)).build();
+
+        BDDMockito.given(service.patchById(Mockito.eq(Long.valueOf(1)), Mockito.any(Book.class)))
+                .willAnswer(invocation -> {
+                    Book changes = invocation.getArgument(1);
+                    assertThat(changes.getTitle()).isEqualTo("Fábrica de Valores Vol. 2");
+                    assertThat(changes.getAuthor()).isNull();
+                    assertThat(changes.getIsbn()).isNull();
+                    return patched;
+                });
+
+        mvc.perform(MockMvcRequestBuilders.patch(PATH.concat("/1"))
+                .contentType(BookAPI.APPLICATION_MERGE_PATCH_JSON_VALUE)
+                .content("{\"title\":\"Fábrica de Valores Vol. 2\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("author").value("Evandro Guedes"))
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"1-4\""));
+    }
+
+    @Test
+    @DisplayName("Deve recusar um merge patch que remove campos obrigatórios ou altera o id")
+    public void patchBookInvalidTest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.patch(PATH.concat("/1"))
+                .contentType(BookAPI.APPLICATION_MERGE_PATCH_JSON_VALUE)
+                .content("{\"title\":null,\"id\":2}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]", Matchers.containsString("title")))
+                .andExpect(jsonPath("errors[0]", Matchers.containsString("id não pode ser alterado")));
+
+        Mockito.verify(service, Mockito.never()).patchById(anyLong(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Deve listar sem contagem quando count=none")
+    public void findByFiltersWithoutCountTest() throws Exception {
+
+        Book book = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123").build();
+
+        BDDMockito.given(service.findSliceByFilter(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new SliceImpl<>(Arrays.asList(book), PageRequest.of(0, 1), true));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("?author=guedes&size=1&count=none")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(1)))
+                .andExpect(jsonPath("last").value(false))
+                .andExpect(jsonPath("totalElements").doesNotExist());
+
+        Mockito.verify(service, Mockito.never()).findByFilter(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Deve recusar modo de contagem desconhecido")
+    public void findByFiltersInvalidCountTest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("?count=approximate")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Modo de contagem inválido!"));
+    }
+
+    @Test
+    @DisplayName("Deve responder em CBOR com envelope enxuto quando o cliente pedir")
+    public void findByFiltersAsCborTest() throws Exception {
+
+        Book book = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123").build();
+
+        BDDMockito.given(service.findByFilter(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 20), 1));
+
+        byte[] body = mvc.perform(MockMvcRequestBuilders.get(PATH.concat("?author=guedes"))
+                .accept(MediaType.valueOf("application/cbor")))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode page = new ObjectMapper(new CBORFactory()).readTree(body);
+
+        assertThat(page.get("content").get(0).get("title").asText()).isEqualTo("Fábrica de Valores");
+        assertThat(page.get("total").asLong()).isEqualTo(1);
+        assertThat(page.get("hasNext").asBoolean()).isFalse();
+        assertThat(page.has("pageable")).isFalse();
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("?author=guedes")))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("pageable").exists());
+    }
+
+    @Test
+    @DisplayName("Deve devolver o mesmo corpo de erro em JSON para livros inexistentes")
+    public void notFoundCachedBodyTest() throws Exception {
+
+        BDDMockito.given(service.findById(anyLong())).willThrow(ResourceNotFoundException.NOT_FOUND);
+
+        for (long id = 1; id <= 2; id++) {
+            mvc.perform(MockMvcRequestBuilders.get(PATH.concat("/" + id)))
+                    .andExpect(status().isNotFound())
+                    .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(jsonPath("httpStatus").value("404"))
+                    .andExpect(jsonPath("errors[0]").value("Resource Not Found"));
+        }
+    }
+
+    @Test
+    @DisplayName("Deve responder erro em CBOR quando o cliente pedir")
+    public void notFoundAsCborTest() throws Exception {
+
+        BDDMockito.given(service.findById(anyLong())).willThrow(ResourceNotFoundException.NOT_FOUND);
+
+        byte[] body = mvc.perform(MockMvcRequestBuilders.get(PATH.concat("/1"))
+                .accept(MediaType.valueOf("application/cbor")))
+                .andExpect(status().isNotFound())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode error = new ObjectMapper(new CBORFactory()).readTree(body);
+
+        assertThat(error.get("httpStatus").asText()).isEqualTo("404");
+    }
+
+    @Test
+    @DisplayName("Deve recusar corpo de requisição malformado com o payload de erro padrão")
+    public void createBookMalformedBodyTest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\": "))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("httpStatus").value("400"))
+                .andExpect(jsonPath("errors[0]").value("Corpo da requisição inválido!"));
+
+        Mockito.verify(service, Mockito.never()).save(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve recusar id que não é numérico com o payload de erro padrão")
+    public void findByInvalidIdTest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("/abc")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Parâmetro inválido: id"));
+    }
+
+    @Test
+    @DisplayName("Deve aceitar o cadastro para gravação assíncrona quando o cliente pedir")
+    public void createBookAsyncTest() throws Exception {
+
+        BDDMockito.given(writeBehind.accept(Mockito.any(Book.class))).willReturn(BookTrackingDTO.builder()
+                .trackingId("abc")
+                .isbn("123123")
+                .status(BookTrackingDTO.Status.PENDING)
+                .build());
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Prefer", "respond-async")
+                .content("{\"title\": \"Fábrica de Valores\", \"author\": \"Evandro Guedes\", \"isbn\": \"123123\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(MockMvcResultMatchers.header().string("Location", "/v1/api/books/pending/abc"))
+                .andExpect(MockMvcResultMatchers.header().string("Preference-Applied", "respond-async"))
+                .andExpect(jsonPath("trackingId").value("abc"))
+                .andExpect(jsonPath("status").value("PENDING"));
+
+        Mockito.verify(service, Mockito.never()).save(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve cadastrar de forma síncrona quando a preferência não for assíncrona")
+    public void createBookOtherPreferenceTest() throws Exception {
+
+        BDDMockito.given(service.save(Mockito.any(Book.class))).willReturn(Book.builder()
+                .id(Long.valueOf(1)).title("Fábrica de Valores").author("Evandro Guedes").isbn("123123").build());
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Prefer", "return=minimal")
+                .content("{\"title\": \"Fábrica de Valores\", \"author\": \"Evandro Guedes\", \"isbn\": \"123123\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("id").value(1));
+
+        Mockito.verify(writeBehind, Mockito.never()).accept(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve responder 503 com Retry-After quando a fila de cadastro estiver cheia")
+    public void createBookAsyncQueueFullTest() throws Exception {
+
+        BDDMockito.given(writeBehind.accept(Mockito.any(Book.class))).willThrow(ServiceUnavailableException.QUEUE_FULL);
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Prefer", "respond-async")
+                .content("{\"title\": \"Fábrica de Valores\", \"author\": \"Evandro Guedes\", \"isbn\": \"123123\"}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(MockMvcResultMatchers.header().string("Retry-After", "1"))
+                .andExpect(jsonPath("errors[0]").value("Fila de cadastro cheia, tente novamente!"));
+    }
+
+    @Test
+    @DisplayName("Deve consultar o andamento de um cadastro assíncrono")
+    public void findPendingTest() throws Exception {
+
+        BDDMockito.given(writeBehind.status("abc")).willReturn(Optional.of(BookTrackingDTO.builder()
+                .trackingId("abc")
+                .id(Long.valueOf(7))
+                .status(BookTrackingDTO.Status.CREATED)
+                .build()));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("/pending/abc")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("status").value("CREATED"))
+                .andExpect(jsonPath("id").value(7));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH.concat("/pending/xyz")))
+                .andExpect(status().isNotFound());
+    }
 }
@@ -0,0 +1,59 @@
+package com.walleftech.ctdd.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class BookBulkheadFilterTest {
+
+    private SimpleMeterRegistry registry;
+    private BookBulkheadFilter filter;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        registry = new SimpleMeterRegistry();
+        filter = new BookBulkheadFilter(1, 0, new ObjectMapper(), registry);
+    }
+
+    @Test
+    @DisplayName("Deve deixar passar a requisição quando há vaga")
+    public void passThroughTest() throws Exception {
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/v1/api/books"), response,
+                (req, res) -> ((MockHttpServletResponse) res).setStatus(200));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(registry.get("book.bulkhead.available").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar com 503 quando todas as vagas estão ocupadas")
+    public void rejectWhenSaturatedTest() throws Exception {
+
+        MockHttpServletResponse outer = new MockHttpServletResponse();
+        MockHttpServletResponse inner = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/v1/api/books"), outer,
+                (req, res) -> filter.doFilter(new MockHttpServletRequest("GET", "/v1/api/books/1"), inner,
+                        (innerReq, innerRes) -> ((MockHttpServletResponse) innerRes).setStatus(200)));
+
+        assertThat(inner.getStatus()).isEqualTo(503);
+        assertThat(inner.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(inner.getContentAsString()).contains("Servidor ocupado, tente novamente!");
+        assertThat(registry.get("book.bulkhead.rejected").counter().count()).isEqualTo(1);
+        assertThat(registry.get("book.bulkhead.available").gauge().value()).isEqualTo(1);
+    }
+}
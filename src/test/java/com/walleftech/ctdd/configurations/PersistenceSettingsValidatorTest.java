@@ -0,0 +1,77 @@
+package com.walleftech.ctdd.configurations;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class PersistenceSettingsValidatorTest {
+
+    private HikariDataSource dataSource;
+    private EntityManagerFactory entityManagerFactory;
+    private ObjectProvider<OpenEntityManagerInViewInterceptor> openInView;
+    private Map<String, Object> properties;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setMaximumPoolSize(20);
+        dataSource.setMinimumIdle(20);
+
+        properties = new HashMap<>();
+        properties.put("hibernate.jdbc.batch_size", "50");
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+        properties.put("hibernate.query.in_clause_parameter_padding", "true");
+
+        entityManagerFactory = Mockito.mock(EntityManagerFactory.class);
+        when(entityManagerFactory.getProperties()).thenReturn(properties);
+
+        openInView = Mockito.mock(ObjectProvider.class);
+    }
+
+    @Test
+    @DisplayName("Deve aceitar a configuração efetiva igual à declarada")
+    public void acceptMatchingSettingsTest() {
+
+        PersistenceSettingsValidator validator =
+                new PersistenceSettingsValidator(dataSource, entityManagerFactory, openInView, 20, "50", false);
+
+        Assertions.assertThatCode(validator::validate).doesNotThrowAnyException();
+    }
+
+    @Test
+    @DisplayName("Deve impedir a subida quando a configuração efetiva divergir da declarada")
+    public void rejectDivergentSettingsTest() {
+
+        properties.remove("hibernate.order_updates");
+        when(openInView.getIfAvailable()).thenReturn(new OpenEntityManagerInViewInterceptor());
+
+        PersistenceSettingsValidator validator =
+                new PersistenceSettingsValidator(dataSource, entityManagerFactory, openInView, 10, "50", false);
+
+        Throwable exception = Assertions.catchThrowable(validator::validate);
+
+        assertThat(exception).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("maximum-pool-size esperado 10 mas está 20")
+                .hasMessageContaining("hibernate.order_updates")
+                .hasMessageContaining("open-in-view esperado false mas está true");
+    }
+}
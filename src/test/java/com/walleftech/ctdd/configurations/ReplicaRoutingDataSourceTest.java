@@ -0,0 +1,206 @@
+package com.walleftech.ctdd.configurations;
+
+import com.walleftech.ctdd.entities.Book;
+import com.jayway.jsonpath.JsonPath;
+import com.walleftech.ctdd.services.BookService;
+import com.walleftech.ctdd.services.impl.BookServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingDataSourceTest.PRIMARY_URL,
+        "spring.boot.admin.client.enabled=false",
+        "book.replicas.enabled=true",
+        "book.replicas.urls=" + ReplicaRoutingDataSourceTest.REPLICA_URL + ",jdbc:h2:mem:rr-offline;IFEXISTS=TRUE",
+        "book.replicas.connection-timeout-ms=250",
+        "book.replicas.read-your-writes-ms=60000"
+})
+@AutoConfigureMockMvc
+public class ReplicaRoutingDataSourceTest {
+
+    static final String BOOK_API = "/v1/api/books";
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:rr-primary;DB_CLOSE_DELAY=-1";
+
+    static final String REPLICA_URL = "jdbc:h2:mem:rr-replica;DB_CLOSE_DELAY=-1";
+
+    static {
+        // a réplica precisa ter o schema antes do contexto subir: o aquecimento dos índices já lê dela
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table book (id bigint not null, author varchar(255), "
+                    + "isbn varchar(255), title varchar(255), version bigint, primary key (id))");
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Autowired
+    BookService service;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+
+        routing = dataSource.unwrap(ReplicaRoutingDataSource.class);
+
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("merge into book key (id) values (900, 'Réplica', 'rr-900', 'Lido da réplica', 0)");
+        }
+
+        routing.checkReplicas();
+        cacheManager.getCache(BookServiceImpl.BOOKS_CACHE).clear();
+    }
+
+    @Test
+    @DisplayName("Deve ler da réplica e tirar do rodízio a réplica fora do ar")
+    public void readFromHealthyReplicaTest() {
+
+        for (int i = 0; i < 4; i++) {
+            Book book = service.findById(Long.valueOf(900)).get();
+
+            assertThat(book.getTitle()).isEqualTo("Lido da réplica");
+        }
+
+        assertThat(routing.healthyReplicas()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve ler do primário logo depois de uma escrita somente para o cliente que escreveu")
+    public void readYourWritesTest() throws Exception {
+
+        String json = "{\"title\":\"Fábrica de Valores\",\"author\":\"Evandro Guedes\",\"isbn\":\"rr-1\"}";
+
+        MvcResult created = mvc.perform(MockMvcRequestBuilders.post(BOOK_API)
+                .contentType(MediaType.APPLICATION_JSON).content(json))
+                .andExpect(status().isCreated())
+                .andExpect(cookie().exists(ReadYourWritesFilter.COOKIE))
+                .andReturn();
+
+        Cookie lastWrite = created.getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+        String id = JsonPath.read(created.getResponse().getContentAsString(), "$.id").toString();
+
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/" + id)).cookie(lastWrite))
+                .andExpect(status().isOk());
+
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/" + id)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Deve ler a própria escrita com o cache ligado mesmo depois de outro cliente ler da réplica")
+    public void readYourWritesWithCacheTest() throws Exception {
+
+        for (String url : new String[]{PRIMARY_URL, REPLICA_URL}) {
+            try (Connection connection = DriverManager.getConnection(url, "sa", "");
+                 Statement statement = connection.createStatement()) {
+                statement.execute("merge into book key (id) values (901, 'Evandro Guedes', 'rr-901', 'Título antigo', 0)");
+            }
+        }
+
+        String json = "{\"title\":\"Título novo\",\"author\":\"Evandro Guedes\",\"isbn\":\"rr-901\"}";
+
+        MvcResult updated = mvc.perform(MockMvcRequestBuilders.put(BOOK_API.concat("/901"))
+                .contentType(MediaType.APPLICATION_JSON).content(json))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        Cookie lastWrite = updated.getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+
+        // outro cliente lê da réplica, ainda desatualizada, e o livro vai para o cache
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/901")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("title").value("Título antigo"));
+
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/901")).cookie(lastWrite))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("title").value("Título novo"));
+    }
+
+    @Test
+    @DisplayName("Deve usar o primário quando a réplica escolhida não conectar")
+    public void fallbackToPrimaryTest() throws SQLException {
+
+        DataSource primary = Mockito.mock(DataSource.class);
+        DataSource replica = Mockito.mock(DataSource.class);
+        Connection primaryConnection = Mockito.mock(Connection.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(primary.getConnection("sa", "")).thenReturn(primaryConnection);
+        when(replica.getConnection()).thenThrow(new SQLException("réplica fora do ar"));
+        when(replica.getConnection("sa", "")).thenThrow(new SQLException("réplica fora do ar"));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReplicaRoutingDataSource fallback = new ReplicaRoutingDataSource(primary,
+                Collections.singletonMap("replica", replica));
+        fallback.afterPropertiesSet();
+        fallback.bindTo(registry);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            assertThat(fallback.getConnection()).isSameAs(primaryConnection);
+            assertThat(fallback.getConnection()).isSameAs(primaryConnection);
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+
+        Mockito.verify(replica, Mockito.times(1)).getConnection();
+        assertThat(fallback.healthyReplicas()).isZero();
+        assertThat(registry.get(ReplicaRoutingDataSource.FALLBACK_COUNTER).functionCounter().count()).isEqualTo(1);
+
+        ReplicaRoutingDataSource withCredentials = new ReplicaRoutingDataSource(primary,
+                Collections.singletonMap("replica", replica));
+        withCredentials.afterPropertiesSet();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            assertThat(withCredentials.getConnection("sa", "")).isSameAs(primaryConnection);
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+
+        Mockito.verify(replica, Mockito.times(1)).getConnection("sa", "");
+        assertThat(withCredentials.healthyReplicas()).isZero();
+    }
+}
@@ -0,0 +1,63 @@
+package com.walleftech.ctdd.exceptions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class ErrorLogLimiterTest {
+
+    private Logger log;
+    private ErrorLogLimiter limiter;
+
+    @BeforeEach
+    public void setUp() {
+        log = Mockito.mock(Logger.class);
+        when(log.isErrorEnabled()).thenReturn(true);
+        limiter = new ErrorLogLimiter(3);
+    }
+
+    @Test
+    @DisplayName("Deve descartar os erros que passarem do limite por segundo")
+    public void suppressAboveLimitTest() {
+
+        for (int i = 0; i < 100; i++) {
+            limiter.error(log, ResourceNotFoundException.NOT_FOUND);
+        }
+
+        Mockito.verify(log, Mockito.atMost(6)).error(anyString());
+        Mockito.verify(log, Mockito.atLeast(3)).error("Resource Not Found");
+    }
+
+    @Test
+    @DisplayName("Deve limitar cada tipo de exceção separadamente")
+    public void limitPerExceptionTypeTest() {
+
+        for (int i = 0; i < 10; i++) {
+            limiter.error(log, ResourceNotFoundException.NOT_FOUND);
+        }
+        limiter.error(log, BusinessException.ISBN_ALREADY_REGISTERED);
+
+        Mockito.verify(log).error("Isbn já registrado!");
+    }
+
+    @Test
+    @DisplayName("Não deve registrar nada quando o nível de erro estiver desligado")
+    public void skipWhenErrorDisabledTest() {
+
+        when(log.isErrorEnabled()).thenReturn(false);
+
+        limiter.error(log, ResourceNotFoundException.NOT_FOUND);
+
+        Mockito.verify(log, Mockito.never()).error(anyString());
+    }
+}
@@ -0,0 +1,62 @@
+package com.walleftech.ctdd.indexes;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.repositories.BookRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class BookCountCacheTest {
+
+    @MockBean
+    private BookRepository repository;
+
+    private SimpleMeterRegistry registry;
+    private BookCountCache countCache;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        countCache = new BookCountCache(repository, registry, 30, 100);
+    }
+
+    @Test
+    @DisplayName("Deve reaproveitar o total para filtros equivalentes")
+    public void reuseTotalForNormalizedFilterTest() {
+
+        when(repository.countByFilter(any(Book.class))).thenReturn(42L);
+
+        long first = countCache.count(Book.builder().author("Guedes").build());
+        long second = countCache.count(Book.builder().author("GUEDES").build());
+
+        assertThat(first).isEqualTo(42L);
+        assertThat(second).isEqualTo(42L);
+        Mockito.verify(repository, Mockito.times(1)).countByFilter(any(Book.class));
+        assertThat(registry.get(BookCountCache.AVOIDED_COUNTER).tag("mode", "cached").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve contar novamente após invalidar os totais")
+    public void countAgainAfterInvalidateTest() {
+
+        when(repository.countByFilter(any(Book.class))).thenReturn(1L, 2L);
+
+        countCache.count(Book.builder().title("valores").build());
+        countCache.invalidateAll();
+
+        assertThat(countCache.count(Book.builder().title("valores").build())).isEqualTo(2L);
+    }
+}
@@ -0,0 +1,104 @@
+package com.walleftech.ctdd.indexes;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.repositories.BookRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class BookSearchIndexTest {
+
+    @MockBean
+    private BookRepository repository;
+
+    private BookSearchIndex index;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        index = new BookSearchIndex(repository);
+        index.index(Arrays.asList(
+                Book.builder().id(Long.valueOf(1)).title("Pai Rico, Pai Pobre").author("Robert Kiyosaki").build(),
+                Book.builder().id(Long.valueOf(2)).title("Fábrica de Valores").author("Evandro Guedes").build(),
+                Book.builder().id(Long.valueOf(3)).title("Os Segredos da Mente Milionária").author("T. Harv Eker").build(),
+                Book.builder().id(Long.valueOf(4)).title("Investimentos").author("Gustavo Cerbasi, autor de Valores").build()));
+        index.refresh();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Test
+    @DisplayName("Deve encontrar livros ignorando acentos e maiúsculas")
+    public void searchIgnoringAccentsTest() {
+
+        BookSearchIndex.Hits hits = index.search("FABRICA", PageRequest.of(0, 10));
+
+        assertThat(hits.getIds()).containsExactly(Long.valueOf(2));
+        assertThat(hits.getTotal()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve ordenar por relevância dando mais peso ao título")
+    public void searchRankingTest() {
+
+        BookSearchIndex.Hits hits = index.search("valores", PageRequest.of(0, 10));
+
+        assertThat(hits.getIds()).containsExactly(Long.valueOf(2), Long.valueOf(4));
+    }
+
+    @Test
+    @DisplayName("Deve paginar os resultados mantendo o total")
+    public void searchPaginationTest() {
+
+        BookSearchIndex.Hits hits = index.search("valores", PageRequest.of(1, 1));
+
+        assertThat(hits.getIds()).containsExactly(Long.valueOf(4));
+        assertThat(hits.getTotal()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve refletir atualizações e remoções no índice assim que gravadas")
+    public void updateAndRemoveTest() {
+
+        index.index(Book.builder().id(Long.valueOf(2)).title("Do Mil ao Milhão").author("Thiago Nigro").build());
+        index.remove(Long.valueOf(4));
+
+        assertThat(index.search("valores", PageRequest.of(0, 10)).getIds()).isEmpty();
+        assertThat(index.search("milhao", PageRequest.of(0, 10)).getIds()).containsExactly(Long.valueOf(2));
+    }
+
+    @Test
+    @DisplayName("Deve indexar somente depois do commit da transação")
+    public void indexAfterCommitTest() {
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.index(Book.builder().id(Long.valueOf(5)).title("O Investidor Inteligente").author("Benjamin Graham").build());
+
+            assertThat(index.search("inteligente", PageRequest.of(0, 10)).getIds()).isEmpty();
+
+            TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(index.search("inteligente", PageRequest.of(0, 10)).getIds()).containsExactly(Long.valueOf(5));
+    }
+}
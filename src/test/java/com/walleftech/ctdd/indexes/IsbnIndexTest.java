@@ -0,0 +1,81 @@
+package com.walleftech.ctdd.indexes;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.repositories.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class IsbnIndexTest {
+
+    @MockBean
+    private BookRepository repository;
+
+    private IsbnIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new IsbnIndex(repository, 10000, 0.01);
+    }
+
+    @Test
+    @DisplayName("Deve considerar qualquer isbn como possível antes do carregamento")
+    public void mightContainBeforeWarmUpTest() {
+
+        assertThat(index.isLoaded()).isFalse();
+        assertThat(index.mightContain("123123")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve carregar os isbns existentes e responder se um isbn pode existir")
+    public void warmUpTest() {
+
+        Mockito.doAnswer(invocation -> {
+            Consumer<List<Book>> consumer = invocation.getArgument(1);
+            consumer.accept(Arrays.asList(Book.builder().isbn("123123").build()));
+            return null;
+        }).when(repository).forEachChunk(anyInt(), any());
+
+        index.warmUp();
+        index.add("456456");
+
+        assertThat(index.isLoaded()).isTrue();
+        assertThat(index.mightContain("123123")).isTrue();
+        assertThat(index.mightContain("456456")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve manter a taxa de falsos positivos próxima da configurada")
+    public void falsePositiveRateTest() {
+
+        index.warmUp();
+
+        for (int i = 0; i < 10000; i++) {
+            index.add("isbn-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (index.mightContain("outro-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives).isLessThan(300);
+    }
+}
@@ -0,0 +1,73 @@
+package com.walleftech.ctdd.metrics;
+
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.exceptions.ResourceNotFoundException;
+import com.walleftech.ctdd.services.BookService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class BookMetricsAspectTest {
+
+    @MockBean
+    private BookService service;
+
+    private SimpleMeterRegistry registry;
+
+    private BookService proxy;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(service);
+        factory.addAspect(new BookMetricsAspect(registry));
+        proxy = factory.getProxy();
+    }
+
+    @Test
+    @DisplayName("Deve registrar o tempo de cada método do serviço")
+    public void timeServiceMethodTest() {
+
+        when(service.findById(Long.valueOf(1))).thenReturn(Optional.of(Book.builder().id(Long.valueOf(1)).build()));
+
+        proxy.findById(Long.valueOf(1));
+        proxy.findById(Long.valueOf(1));
+
+        assertThat(registry.get(BookMetricsAspect.SERVICE_TIMER)
+                .tag("method", "findById")
+                .tag("exception", "none")
+                .timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve contar as exceções de domínio lançadas pelo serviço")
+    public void countDomainErrorsTest() {
+
+        when(service.findById(Long.valueOf(2))).thenThrow(new ResourceNotFoundException("Resource Not Found!"));
+
+        Assertions.catchThrowable(() -> proxy.findById(Long.valueOf(2)));
+
+        assertThat(registry.get(BookMetricsAspect.ERRORS_COUNTER)
+                .tag("exception", "ResourceNotFoundException")
+                .counter().count()).isEqualTo(1);
+        assertThat(registry.get(BookMetricsAspect.SERVICE_TIMER)
+                .tag("method", "findById")
+                .tag("exception", "ResourceNotFoundException")
+                .timer().count()).isEqualTo(1);
+    }
+}
@@ -1,16 +1,25 @@
 package com.walleftech.ctdd.repositories;
 
+import com.walleftech.ctdd.dto.BookCursor;
 import com.walleftech.ctdd.entities.Book;
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import javax.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("Teste")
 @DataJpaTest
@@ -49,4 +58,189 @@ public class BookRepositoryTest {
 
         Assertions.assertThat(exist).isTrue();
     }
+
+    @Test
+    @DisplayName("Deve retornar apenas os isbns já existentes dentre os informados")
+    public void findExistingIsbnsTest() {
+
+        entityManager.persist(Book.builder().title("Fábrica de valore").author("Evandro Guedes").isbn("1").build());
+        entityManager.persist(Book.builder().title("Pai Rico").author("Robert Kiyosaki").isbn("2").build());
+
+        List<String> existing = repository.findExistingIsbns(Arrays.asList("1", "3"));
+
+        Assertions.assertThat(existing).containsExactly("1");
+    }
+
+    @Test
+    @DisplayName("Deve percorrer todos os livros em blocos do tamanho informado")
+    public void forEachChunkTest() {
+
+        for (int i = 0; i < 5; i++) {
+            entityManager.persist(Book.builder().title("Livro " + i).author("Autor").isbn(String.valueOf(i)).build());
+        }
+        entityManager.flush();
+
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<String> isbns = new ArrayList<>();
+
+        repository.forEachChunk(2, chunk -> {
+            chunkSizes.add(chunk.size());
+            chunk.forEach(book -> isbns.add(book.getIsbn()));
+        });
+
+        Assertions.assertThat(chunkSizes).containsExactly(2, 2, 1);
+        Assertions.assertThat(isbns).containsExactly("0", "1", "2", "3", "4");
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor usando a chave de ordenação e o id")
+    public void findByFilterAfterTest() {
+
+        entityManager.persist(Book.builder().title("B").author("Evandro Guedes").isbn("1").build());
+        entityManager.persist(Book.builder().title("A").author("Evandro Guedes").isbn("2").build());
+        entityManager.persist(Book.builder().title("B").author("Evandro Guedes").isbn("3").build());
+        entityManager.persist(Book.builder().title("C").author("Robert Kiyosaki").isbn("4").build());
+        entityManager.flush();
+
+        Book filter = Book.builder().author("guedes").build();
+        Sort.Order order = Sort.Order.asc("title");
+
+        List<Book> first = repository.findByFilterAfter(filter, order, null, 2);
+        List<Book> second = repository.findByFilterAfter(filter, order, BookCursor.after(first.get(1), order), 2);
+
+        Assertions.assertThat(first).extracting(Book::getIsbn).containsExactly("2", "1");
+        Assertions.assertThat(second).extracting(Book::getIsbn).containsExactly("3");
+    }
+
+    @Test
+    @DisplayName("Não deve permitir dois livros com o mesmo isbn")
+    public void uniqueIsbnTest() {
+
+        entityManager.persist(Book.builder().title("Fábrica de valore").author("Evandro Guedes").isbn("1").build());
+        entityManager.persist(Book.builder().title("Pai Rico").author("Robert Kiyosaki").isbn("1").build());
+
+        Assertions.assertThatThrownBy(() -> entityManager.flush())
+                .isInstanceOf(PersistenceException.class)
+                .hasCauseInstanceOf(ConstraintViolationException.class)
+                .extracting(ex -> ((ConstraintViolationException) ex.getCause()).getConstraintName())
+                .asString()
+                .containsIgnoringCase(Book.ISBN_CONSTRAINT);
+    }
+
+    @Test
+    @DisplayName("Deve atualizar um livro em uma única instrução respeitando a versão")
+    public void updateBookTest() {
+
+        Book book = entityManager.persistFlushFind(
+                Book.builder().title("Fábrica de valore").author("Evandro Guedes").isbn("1").build());
+
+        int stale = repository.updateBook(book.getId(), "Novo", "Evandro Guedes", "1", book.getVersion() + 1);
+        int updated = repository.updateBook(book.getId(), "Novo", "Evandro Guedes", "1", book.getVersion());
+        int unversioned = repository.updateBook(book.getId(), "Outro", "Evandro Guedes", "1", null);
+        entityManager.clear();
+
+        Assertions.assertThat(stale).isZero();
+        Assertions.assertThat(updated).isOne();
+        Assertions.assertThat(unversioned).isOne();
+        Book found = entityManager.find(Book.class, book.getId());
+        Assertions.assertThat(found.getTitle()).isEqualTo("Outro");
+        Assertions.assertThat(found.getVersion()).isEqualTo(book.getVersion() + 2);
+        Assertions.assertThat(repository.findVersionById(book.getId())).isEqualTo(book.getVersion() + 2);
+    }
+
+    @Test
+    @DisplayName("Deve deletar um livro em uma única instrução")
+    public void deleteBookByIdTest() {
+
+        Book book = entityManager.persistFlushFind(
+                Book.builder().title("Fábrica de valore").author("Evandro Guedes").isbn("1").build());
+
+        Assertions.assertThat(repository.deleteBookById(book.getId())).isOne();
+        Assertions.assertThat(repository.deleteBookById(book.getId())).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve atualizar e deletar livros em lote por ids resolvidos a partir do filtro")
+    public void bulkUpdateAndDeleteTest() {
+
+        entityManager.persist(Book.builder().title("Fábrica de valore").author("Evandro Guedes").isbn("1").build());
+        entityManager.persist(Book.builder().title("Aprenda a investir").author("evandro guedes").isbn("2").build());
+        entityManager.persist(Book.builder().title("Pai Rico").author("Robert Kiyosaki").isbn("3").build());
+        entityManager.flush();
+
+        List<Long> first = repository.findIdsByFilter(Book.builder().author("GUEDES").build(), null, 1);
+        List<Long> ids = repository.findIdsByFilter(Book.builder().author("GUEDES").build(), null, 10);
+
+        Assertions.assertThat(first).hasSize(1);
+        Assertions.assertThat(repository.findIdsByFilter(Book.builder().author("GUEDES").build(), first.get(0), 10))
+                .containsExactly(ids.get(1));
+        Assertions.assertThat(ids).hasSize(2);
+        Assertions.assertThat(repository.updateBooks(ids, null, "Evandro Guedes Jr.")).isEqualTo(2);
+        entityManager.clear();
+        Assertions.assertThat(repository.findAllById(ids))
+                .extracting(Book::getAuthor, Book::getTitle)
+                .containsExactlyInAnyOrder(
+                        Assertions.tuple("Evandro Guedes Jr.", "Fábrica de valore"),
+                        Assertions.tuple("Evandro Guedes Jr.", "Aprenda a investir"));
+        Assertions.assertThat(repository.deleteBooksByIds(ids)).isEqualTo(2);
+        Assertions.assertThat(repository.count()).isOne();
+    }
+
+    @Test
+    @DisplayName("Deve atualizar apenas as colunas informadas no patch")
+    public void patchBookTest() {
+
+        Book book = entityManager.persistFlushFind(
+                Book.builder().title("Fábrica de valore").author("Evandro Guedes").isbn("1").build());
+
+        int stale = repository.patchBook(book.getId(),
+                Book.builder().title("Novo").version(book.getVersion() + 1).build());
+        int patched = repository.patchBook(book.getId(),
+                Book.builder().title("Fábrica de Valores").version(book.getVersion()).build());
+        entityManager.clear();
+
+        Assertions.assertThat(stale).isZero();
+        Assertions.assertThat(patched).isOne();
+        Book found = entityManager.find(Book.class, book.getId());
+        Assertions.assertThat(found.getTitle()).isEqualTo("Fábrica de Valores");
+        Assertions.assertThat(found.getAuthor()).isEqualTo("Evandro Guedes");
+        Assertions.assertThat(found.getIsbn()).isEqualTo("1");
+        Assertions.assertThat(found.getVersion()).isEqualTo(book.getVersion() + 1);
+    }
+
+    @Test
+    @DisplayName("Deve paginar e contar pelo filtro sem Example")
+    public void findAndCountByFilterTest() {
+
+        entityManager.persist(Book.builder().title("Fábrica de valore").author("Evandro Guedes").isbn("1").build());
+        entityManager.persist(Book.builder().title("Aprenda a investir").author("Evandro Guedes").isbn("2").build());
+        entityManager.persist(Book.builder().title("Pai Rico").author("Robert Kiyosaki").isbn("3").build());
+        entityManager.flush();
+
+        Book filter = Book.builder().author("guedes").build();
+        List<Book> page = repository.findByFilter(filter,
+                PageRequest.of(0, 1, Sort.by("title")), 2);
+
+        Assertions.assertThat(page).extracting(Book::getTitle)
+                .containsExactly("Aprenda a investir", "Fábrica de valore");
+        Assertions.assertThat(repository.countByFilter(filter)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve aplicar a versão do filtro tanto na página quanto na contagem")
+    public void findAndCountByVersionTest() {
+
+        Book changed = entityManager.persist(Book.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("1").build());
+        entityManager.persist(Book.builder().title("Aprenda a investir").author("Evandro Guedes").isbn("2").build());
+        entityManager.flush();
+        repository.patchBook(changed.getId(), Book.builder().title("Fábrica de Valores 2").build());
+        entityManager.clear();
+
+        Book filter = Book.builder().author("guedes").version(0L).build();
+        List<Book> page = repository.findByFilter(filter, PageRequest.of(0, 10), 10);
+
+        Assertions.assertThat(page).extracting(Book::getTitle).containsExactly("Aprenda a investir");
+        Assertions.assertThat(repository.countByFilter(filter)).isOne();
+        Assertions.assertThat(repository.findPageByFilter(filter, PageRequest.of(0, 10)).getTotalElements()).isOne();
+    }
 }
@@ -0,0 +1,113 @@
+package com.walleftech.ctdd.services;
+
+import com.walleftech.ctdd.configurations.CacheConfiguration;
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.indexes.BookCountCache;
+import com.walleftech.ctdd.indexes.BookSearchIndex;
+import com.walleftech.ctdd.indexes.IsbnIndex;
+import com.walleftech.ctdd.repositories.BookRepository;
+import com.walleftech.ctdd.services.impl.BookServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+@ContextConfiguration(classes = {BookServiceImpl.class, CacheConfiguration.class, SimpleMeterRegistry.class})
+@ImportAutoConfiguration(CacheAutoConfiguration.class)
+@TestPropertySource(properties = {
+        "spring.cache.cache-names=books",
+        "spring.cache.caffeine.spec=maximumSize=100,expireAfterWrite=1m"
+})
+public class BookServiceCacheTest {
+
+    @Autowired
+    private BookService service;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @MockBean
+    private BookRepository repository;
+
+    @MockBean
+    private IsbnIndex isbnIndex;
+
+    @MockBean
+    private BookSearchIndex searchIndex;
+
+    @MockBean
+    private BookCountCache countCache;
+
+    private Book book;
+
+    @BeforeEach
+    public void setUp() {
+        cacheManager.getCache(BookServiceImpl.BOOKS_CACHE).clear();
+
+        book = Book.builder()
+                .id(Long.valueOf(1))
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123")
+                .build();
+    }
+
+    @Test
+    @DisplayName("Deve buscar o livro no banco apenas uma vez quando estiver em cache")
+    public void findByIdFromCacheTest() {
+
+        when(repository.findById(book.getId())).thenReturn(Optional.of(book));
+
+        service.findById(book.getId());
+        Optional<Book> cached = service.findById(book.getId());
+
+        assertThat(cached).contains(book);
+        Mockito.verify(repository, Mockito.times(1)).findById(book.getId());
+    }
+
+    @Test
+    @DisplayName("Deve remover o livro do cache ao deletar")
+    public void evictOnDeleteTest() {
+
+        when(repository.findById(book.getId())).thenReturn(Optional.of(book));
+        when(repository.deleteBookById(book.getId())).thenReturn(1);
+
+        service.findById(book.getId());
+        service.deleteById(book.getId());
+        service.findById(book.getId());
+
+        Mockito.verify(repository, Mockito.times(2)).findById(book.getId());
+    }
+
+    @Test
+    @DisplayName("Deve colocar o livro salvo no cache")
+    public void putOnSaveTest() {
+
+        when(repository.existsByIsbn(book.getIsbn())).thenReturn(false);
+        when(repository.save(any(Book.class))).thenReturn(book);
+
+        service.save(Book.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("123123").build());
+        service.findById(book.getId());
+
+        Mockito.verify(repository, Mockito.never()).findById(book.getId());
+    }
+}
@@ -2,10 +2,17 @@ package com.walleftech.ctdd.services;
 
 import com.walleftech.ctdd.exceptions.BusinessException;
 import com.walleftech.ctdd.exceptions.ResourceNotFoundException;
+import com.walleftech.ctdd.exceptions.VersionConflictException;
+import com.walleftech.ctdd.indexes.BookCountCache;
+import com.walleftech.ctdd.indexes.BookSearchIndex;
+import com.walleftech.ctdd.indexes.IsbnIndex;
 import com.walleftech.ctdd.repositories.BookRepository;
 import com.walleftech.ctdd.entities.Book;
 import com.walleftech.ctdd.services.impl.BookServiceImpl;
+import com.walleftech.ctdd.services.impl.SingleFlight;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -13,18 +20,25 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.Example;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.InstanceOfAssertFactories.PATH;
@@ -42,9 +56,21 @@ public class BookServiceTest {
     @MockBean
     private BookRepository repository;
 
+    @MockBean
+    private IsbnIndex isbnIndex;
+
+    @MockBean
+    private BookSearchIndex searchIndex;
+
+    @MockBean
+    private BookCountCache countCache;
+
+    private SimpleMeterRegistry registry;
+
     @BeforeEach
     public void setUp() {
-        this.service = new BookServiceImpl(repository);
+        this.registry = new SimpleMeterRegistry();
+        this.service = new BookServiceImpl(repository, isbnIndex, searchIndex, countCache, registry);
     }
 
     @Test
@@ -85,6 +111,7 @@ public class BookServiceTest {
                 .isbn("123123")
                 .build();
 
+        when( isbnIndex.mightContain(Mockito.anyString()) ).thenReturn(true);
         when( repository.existsByIsbn(Mockito.anyString()) ).thenReturn(true);
 
         Throwable exception = Assertions.catchThrowable(() -> service.save(book));
@@ -133,17 +160,12 @@ public class BookServiceTest {
     @Test
     @DisplayName("Deve deletar um livro por id")
     public void deleteByIdTest() {
-        Book book = Book.builder()
-                .id(Long.valueOf(12))
-                .title("Fábrica de Valores")
-                .author("Evandro Guedes")
-                .isbn("123123")
-                .build();
-        when(repository.findById(anyLong())).thenReturn(Optional.of(book));
+        when(repository.deleteBookById(anyLong())).thenReturn(1);
 
         assertDoesNotThrow(() -> service.deleteById(Long.valueOf(51)));
 
-        Mockito.verify(repository, Mockito.times(1)).deleteById(anyLong());
+        Mockito.verify(repository, Mockito.times(1)).deleteBookById(anyLong());
+        Mockito.verify(repository, Mockito.never()).findById(anyLong());
 
     }
 
@@ -151,52 +173,64 @@ public class BookServiceTest {
     @DisplayName("Deve retornar uma exceção quando o livro não existir")
     public void sholdThrowResourceNotFoundExceptionTest() {
 
-        when(repository.findById(anyLong())).thenThrow(new ResourceNotFoundException("Resource Not Found"));
+        when(repository.deleteBookById(anyLong())).thenReturn(0);
 
         Throwable exception = Assertions.catchThrowable(() -> service.deleteById(Long.valueOf(88)));
 
         assertThat(exception).isInstanceOf(ResourceNotFoundException.class);
         assertThat(exception.getMessage()).isEqualTo("Resource Not Found");
+        assertThat(exception.getStackTrace()).isEmpty();
     }
 
     @Test
     @DisplayName("Deve atualizar um livro")
     public void updateBookTest() {
-        Book book = Book.builder()
-                .id(Long.valueOf(1))
-                .title("Fábrica de Valores")
-                .author("Evandro Guedes")
-                .isbn("123123").build();
-
         Book newBook = Book.builder()
-                .id(Long.valueOf(1))
                 .title("Fábrica de Valores Vol. 2")
                 .author("Evandro Guedes")
                 .isbn("123123").build();
 
-        when(repository.findById(Long.valueOf(1))).thenReturn(Optional.of(book));
-        when(repository.save(newBook)).thenReturn(newBook);
+        when(repository.updateBook(Long.valueOf(1), newBook.getTitle(), newBook.getAuthor(), newBook.getIsbn(), null))
+                .thenReturn(1);
+        when(repository.findVersionById(Long.valueOf(1))).thenReturn(Long.valueOf(4));
 
-        Book bookUpdated = service.updateById(book.getId(), newBook);
+        Book bookUpdated = service.updateById(Long.valueOf(1), newBook);
 
-        assertThat(bookUpdated.getId()).isEqualTo(newBook.getId());
+        assertThat(bookUpdated.getId()).isEqualTo(Long.valueOf(1));
         assertThat(bookUpdated.getTitle()).isEqualTo(newBook.getTitle());
         assertThat(bookUpdated.getAuthor()).isEqualTo(newBook.getAuthor());
         assertThat(bookUpdated.getIsbn()).isEqualTo(newBook.getIsbn());
+        assertThat(bookUpdated.getVersion()).isEqualTo(Long.valueOf(4));
+        Mockito.verify(repository, Mockito.never()).findById(anyLong());
+        Mockito.verify(repository, Mockito.never()).save(any(Book.class));
     }
 
     @Test
     @DisplayName("Deve retornar uma exceção quando o livro não existir")
     public void shouldThrowResourceNotFoundExceptionTest() {
 
-        when(repository.findById(anyLong())).thenThrow(new ResourceNotFoundException("Resource Not Found"));
+        Book book = Book.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("123123").build();
 
-        Throwable exception = Assertions.catchThrowable(() -> service.updateById(Long.valueOf(11), any()));
+        Throwable exception = Assertions.catchThrowable(() -> service.updateById(Long.valueOf(11), book));
 
         assertThat(exception).isInstanceOf(ResourceNotFoundException.class);
         assertThat(exception.getMessage()).isEqualTo("Resource Not Found");
     }
 
+    @Test
+    @DisplayName("Deve lançar uma exceção de conflito quando a versão informada estiver desatualizada")
+    public void shouldThrowVersionConflictExceptionTest() {
+
+        Book book = Book.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("123123")
+                .version(Long.valueOf(3)).build();
+
+        when(repository.existsById(Long.valueOf(11))).thenReturn(true);
+
+        Throwable exception = Assertions.catchThrowable(() -> service.updateById(Long.valueOf(11), book));
+
+        assertThat(exception).isInstanceOf(VersionConflictException.class);
+    }
+
     @Test
     @DisplayName("Deve buscar um livro com base nos filtros informados")
     public void findByFiltersTest() {
@@ -209,10 +243,8 @@ public class BookServiceTest {
 
         PageRequest pageRequest = PageRequest.of(0, 10);
         List<Book> lista = Arrays.asList(book);
-        Page<Book> page = new PageImpl<Book>(lista, pageRequest, 1);
 
-        when(repository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
-                .thenReturn(page);
+        when(repository.findPageByFilter(book, pageRequest)).thenReturn(new PageImpl<>(lista, pageRequest, 1));
 
         Page<Book> result = service.findByFilter(book, pageRequest);
 
@@ -221,4 +253,284 @@ public class BookServiceTest {
         assertThat(result.getPageable().getPageNumber()).isEqualTo(0);
         assertThat(result.getPageable().getPageSize()).isEqualTo(10);
     }
+
+    @Test
+    @DisplayName("Deve salvar um lote de livros ignorando isbns já existentes ou repetidos")
+    public void saveAllBooksTest() {
+
+        Book novo = Book.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("1").build();
+        Book existente = Book.builder().title("Pai Rico").author("Robert Kiyosaki").isbn("2").build();
+        Book repetido = Book.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("1").build();
+
+        when(isbnIndex.mightContain(anyString())).thenReturn(true);
+        when(repository.findExistingIsbns(anyCollection())).thenReturn(Arrays.asList("2"));
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<BookSaveResult> results = service.saveAll(Arrays.asList(novo, existente, repetido));
+
+        assertThat(results).extracting(BookSaveResult::getStatus).containsExactly(BookSaveResult.Status.CREATED,
+                BookSaveResult.Status.DUPLICATED, BookSaveResult.Status.DUPLICATED);
+        assertThat(results.get(0).getBook()).isSameAs(novo);
+        Mockito.verify(repository, Mockito.times(1)).findExistingIsbns(anyCollection());
+        Mockito.verify(repository, Mockito.never()).existsByIsbn(anyString());
+    }
+
+    @Test
+    @DisplayName("Não deve consultar o banco quando o índice garantir que o isbn é novo")
+    public void shouldSkipExistsQueryWhenIsbnIsNewTest() {
+
+        Book book = Book.builder()
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123")
+                .build();
+
+        when(isbnIndex.mightContain(book.getIsbn())).thenReturn(false);
+        when(repository.save(book)).thenReturn(book);
+
+        service.save(book);
+
+        Mockito.verify(repository, Mockito.never()).existsByIsbn(anyString());
+        Mockito.verify(isbnIndex).add(book.getIsbn());
+    }
+
+    @Test
+    @DisplayName("Deve lançar uma exceção de negócio quando a constraint de isbn for violada")
+    public void shouldMapUniqueViolationToBusinessExceptionTest() {
+
+        Book book = Book.builder()
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123")
+                .build();
+
+        when(repository.save(book)).thenThrow(violation("PUBLIC.UK_BOOK_ISBN_INDEX_1"));
+
+        Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+
+        assertThat(exception)
+                .isInstanceOf(BusinessException.class)
+                .hasMessage("Isbn já registrado!");
+    }
+
+    @Test
+    @DisplayName("Deve repassar violações de integridade que não sejam do isbn")
+    public void shouldRethrowOtherIntegrityViolationsTest() {
+
+        Book book = Book.builder()
+                .title("Fábrica de Valores")
+                .author("Evandro Guedes")
+                .isbn("123123")
+                .build();
+
+        when(repository.save(book)).thenThrow(new DataIntegrityViolationException("Value too long for column"));
+
+        Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+
+        assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    @DisplayName("Deve classificar os livros um a um quando o banco rejeitar o lote")
+    public void saveAllShouldClassifyRowsWhenChunkFailsTest() {
+
+        Book novo = Book.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn("1").build();
+        Book concorrente = Book.builder().title("Pai Rico").author("Robert Kiyosaki").isbn("2").build();
+        Book longo = Book.builder().title("Pai Rico").author("Robert Kiyosaki").isbn("3").build();
+
+        when(isbnIndex.mightContain(anyString())).thenReturn(false);
+        when(repository.saveAll(anyList())).thenThrow(violation("PUBLIC.UK_BOOK_ISBN_INDEX_1"));
+        when(repository.save(novo)).thenReturn(novo);
+        when(repository.save(concorrente)).thenThrow(violation("PUBLIC.UK_BOOK_ISBN_INDEX_1"));
+        when(repository.save(longo)).thenThrow(new DataIntegrityViolationException("Value too long for column"));
+
+        List<BookSaveResult> results = service.saveAll(Arrays.asList(novo, concorrente, longo));
+
+        assertThat(results).extracting(BookSaveResult::getStatus).containsExactly(BookSaveResult.Status.CREATED,
+                BookSaveResult.Status.DUPLICATED, BookSaveResult.Status.FAILED);
+        Mockito.verify(isbnIndex).add("1");
+        Mockito.verify(isbnIndex, Mockito.never()).add("2");
+    }
+
+    private DataIntegrityViolationException violation(String constraint) {
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement", null, constraint));
+    }
+
+    @Test
+    @DisplayName("Deve recusar buscas por texto além da janela máxima de resultados")
+    public void searchBeyondWindowTest() {
+
+        Throwable exception = Assertions.catchThrowable(() -> service.search("valores", PageRequest.of(100, 100)));
+
+        assertThat(exception).isInstanceOf(BusinessException.class);
+        Mockito.verify(searchIndex, Mockito.never()).search(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros por texto mantendo a ordem de relevância do índice")
+    public void searchTest() {
+
+        Book first = Book.builder().id(Long.valueOf(2)).title("Fábrica de Valores").build();
+        Book second = Book.builder().id(Long.valueOf(1)).title("Valores").build();
+        PageRequest pageRequest = PageRequest.of(0, 10);
+
+        when(searchIndex.search("valores", pageRequest))
+                .thenReturn(new BookSearchIndex.Hits(Arrays.asList(Long.valueOf(2), Long.valueOf(1)), 2));
+        when(repository.findAllById(anyIterable())).thenReturn(Arrays.asList(second, first));
+
+        Page<Book> result = service.search("valores", pageRequest);
+
+        assertThat(result.getContent()).containsExactly(first, second);
+        assertThat(result.getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve deletar em lote os livros que atendem ao filtro")
+    public void deleteAllByFilterTest() {
+
+        Book filter = Book.builder().author("guedes").build();
+        when(repository.findIdsByFilter(filter, null, 500)).thenReturn(Arrays.asList(Long.valueOf(1), Long.valueOf(2)));
+        when(repository.deleteBooksByIds(anyCollection())).thenReturn(2);
+
+        int deleted = service.deleteAll(null, filter);
+
+        assertThat(deleted).isEqualTo(2);
+        Mockito.verify(searchIndex).remove(Arrays.asList(Long.valueOf(1), Long.valueOf(2)));
+    }
+
+    @Test
+    @DisplayName("Deve atualizar em lote apenas os ids informados, sem repetição")
+    public void updateAllByIdsTest() {
+
+        when(repository.updateBooks(anyCollection(), any(), any())).thenReturn(2);
+
+        int updated = service.updateAll(Arrays.asList(Long.valueOf(1), Long.valueOf(2), Long.valueOf(1)), null,
+                Book.builder().author("Evandro Guedes").build());
+
+        assertThat(updated).isEqualTo(2);
+        Mockito.verify(repository).updateBooks(Arrays.asList(Long.valueOf(1), Long.valueOf(2)), null, "Evandro Guedes");
+        Mockito.verify(repository, Mockito.never()).findIdsByFilter(any(), any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Deve recusar operações em lote sem ids nem filtro ou alterando o isbn")
+    public void rejectInvalidBulkTest() {
+
+        Throwable withoutTarget = Assertions.catchThrowable(() -> service.deleteAll(null, Book.builder().build()));
+        Throwable withIsbn = Assertions.catchThrowable(() -> service.updateAll(Arrays.asList(Long.valueOf(1)), null,
+                Book.builder().isbn("123").build()));
+
+        assertThat(withoutTarget).isInstanceOf(BusinessException.class).hasMessage("Informe os ids ou um filtro!");
+        assertThat(withIsbn).isInstanceOf(BusinessException.class).hasMessage("Isbn não pode ser alterado em lote!");
+        Mockito.verify(repository, Mockito.never()).deleteBooksByIds(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Deve atualizar parcialmente um livro e devolver o estado atual")
+    public void patchByIdTest() {
+
+        Book changes = Book.builder().title("Fábrica de Valores Vol. 2").build();
+        Book patched = Book.builder().id(Long.valueOf(1)).title("Fábrica de Valores Vol. 2")
+                .author("Evandro Guedes").isbn("123123").version(Long.valueOf(1)).build();
+
+        when(repository.patchBook(Long.valueOf(1), changes)).thenReturn(1);
+        when(repository.findById(Long.valueOf(1))).thenReturn(Optional.of(patched));
+
+        Book result = service.patchById(Long.valueOf(1), changes);
+
+        assertThat(result).isSameAs(patched);
+        Mockito.verify(searchIndex).index(patched);
+        Mockito.verify(repository, Mockito.never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Deve lançar conflito ao atualizar parcialmente um livro com versão desatualizada")
+    public void patchByIdVersionConflictTest() {
+
+        Book changes = Book.builder().title("Fábrica de Valores").version(Long.valueOf(1)).build();
+
+        when(repository.patchBook(Long.valueOf(1), changes)).thenReturn(0);
+        when(repository.existsById(Long.valueOf(1))).thenReturn(true);
+
+        Throwable exception = Assertions.catchThrowable(() -> service.patchById(Long.valueOf(1), changes));
+
+        assertThat(exception).isInstanceOf(VersionConflictException.class);
+        Mockito.verify(repository, Mockito.never()).findById(anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve buscar uma fatia sem executar contagem")
+    public void findSliceByFilterTest() {
+
+        Book filter = Book.builder().author("guedes").build();
+        PageRequest pageRequest = PageRequest.of(0, 2);
+        when(repository.findByFilter(filter, pageRequest, 3)).thenReturn(Arrays.asList(
+                Book.builder().id(Long.valueOf(1)).build(),
+                Book.builder().id(Long.valueOf(2)).build(),
+                Book.builder().id(Long.valueOf(3)).build()));
+
+        Slice<Book> result = service.findSliceByFilter(filter, pageRequest);
+
+        assertThat(result.getContent()).hasSize(2);
+        assertThat(result.hasNext()).isTrue();
+        Mockito.verify(repository, Mockito.never()).countByFilter(any());
+        Mockito.verify(countCache).skipped();
+    }
+
+    @Test
+    @DisplayName("Deve usar o total em cache apenas quando não for possível deduzi-lo")
+    public void findByFilterWithCachedCountTest() {
+
+        Book filter = Book.builder().author("guedes").build();
+        when(repository.findByFilter(filter, PageRequest.of(0, 2), 2)).thenReturn(Arrays.asList(
+                Book.builder().id(Long.valueOf(1)).build(),
+                Book.builder().id(Long.valueOf(2)).build()));
+        when(repository.findByFilter(filter, PageRequest.of(1, 2), 2)).thenReturn(Arrays.asList(
+                Book.builder().id(Long.valueOf(3)).build()));
+        when(countCache.count(filter)).thenReturn(3L);
+
+        Page<Book> first = service.findByFilterWithCachedCount(filter, PageRequest.of(0, 2));
+        Page<Book> last = service.findByFilterWithCachedCount(filter, PageRequest.of(1, 2));
+
+        assertThat(first.getTotalElements()).isEqualTo(3);
+        assertThat(last.getTotalElements()).isEqualTo(3);
+        Mockito.verify(countCache, Mockito.times(1)).count(filter);
+        Mockito.verify(countCache, Mockito.times(1)).derivedFromPage();
+    }
+
+    @Test
+    @DisplayName("Deve consultar o banco uma única vez para buscas concorrentes do mesmo livro")
+    public void findByIdCoalescedTest() throws Exception {
+
+        int threads = 16;
+        Book book = Book.builder().id(Long.valueOf(1)).title("Fábrica de Valores").build();
+
+        when(repository.findById(Long.valueOf(1))).thenAnswer(invocation -> {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (registry.get(SingleFlight.COALESCED_COUNTER).tag("operation", "findById").counter().count()
+                    < threads - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            return Optional.of(book);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<Book>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return service.findById(Long.valueOf(1));
+            }));
+        }
+        start.countDown();
+
+        for (Future<Optional<Book>> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).contains(book);
+        }
+        executor.shutdown();
+
+        Mockito.verify(repository, Mockito.times(1)).findById(Long.valueOf(1));
+    }
 }
@@ -0,0 +1,300 @@
+package com.walleftech.ctdd.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walleftech.ctdd.dto.BookTrackingDTO;
+import com.walleftech.ctdd.entities.Book;
+import com.walleftech.ctdd.exceptions.BusinessException;
+import com.walleftech.ctdd.exceptions.ServiceUnavailableException;
+import com.walleftech.ctdd.indexes.IsbnIndex;
+import com.walleftech.ctdd.repositories.BookRepository;
+import com.walleftech.ctdd.services.impl.BookWriteBehindQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class BookWriteBehindQueueTest {
+
+    @MockBean
+    BookService service;
+
+    @MockBean
+    BookRepository repository;
+
+    @MockBean
+    IsbnIndex isbnIndex;
+
+    @TempDir
+    Path directory;
+
+    private List<List<Book>> flushed;
+
+    @BeforeEach
+    public void setUp() {
+
+        flushed = new ArrayList<>();
+        AtomicLong ids = new AtomicLong();
+
+        when(isbnIndex.mightContain(anyString())).thenReturn(true);
+        when(repository.existsByIsbn(anyString())).thenReturn(false);
+        when(service.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Book> books = invocation.getArgument(0);
+            flushed.add(books);
+            books.forEach(book -> book.setId(ids.incrementAndGet()));
+            return books.stream().map(BookSaveResult::created).collect(Collectors.toList());
+        });
+    }
+
+    @Test
+    @DisplayName("Deve aceitar o livro e gravá-lo no próximo ciclo")
+    public void acceptAndFlushTest() throws IOException {
+
+        BookWriteBehindQueue queue = newQueue(10);
+
+        BookTrackingDTO tracking = queue.accept(book("123"));
+
+        assertThat(tracking.getStatus()).isEqualTo(BookTrackingDTO.Status.PENDING);
+        assertThat(queue.status(tracking.getTrackingId()).get().getStatus())
+                .isEqualTo(BookTrackingDTO.Status.PENDING);
+        Mockito.verify(service, Mockito.never()).saveAll(anyList());
+
+        queue.flush();
+
+        BookTrackingDTO done = queue.status(tracking.getTrackingId()).get();
+        assertThat(done.getStatus()).isEqualTo(BookTrackingDTO.Status.CREATED);
+        assertThat(done.getId()).isEqualTo(1L);
+        assertThat(journalSize()).isZero();
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Deve recusar isbn já pendente ou já cadastrado no aceite")
+    public void rejectDuplicatedIsbnTest() throws IOException {
+
+        BookWriteBehindQueue queue = newQueue(10);
+        queue.accept(book("123"));
+        when(repository.existsByIsbn("456")).thenReturn(true);
+
+        Throwable pendingDuplicate = Assertions.catchThrowable(() -> queue.accept(book("123")));
+        Throwable registeredDuplicate = Assertions.catchThrowable(() -> queue.accept(book("456")));
+
+        assertThat(pendingDuplicate).isSameAs(BusinessException.ISBN_ALREADY_REGISTERED);
+        assertThat(registeredDuplicate).isSameAs(BusinessException.ISBN_ALREADY_REGISTERED);
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Deve recusar novos livros quando a fila estiver cheia")
+    public void backpressureTest() throws IOException {
+
+        BookWriteBehindQueue queue = newQueue(2);
+        queue.accept(book("1"));
+        queue.accept(book("2"));
+
+        Throwable exception = Assertions.catchThrowable(() -> queue.accept(book("3")));
+
+        assertThat(exception).isSameAs(ServiceUnavailableException.QUEUE_FULL);
+
+        queue.flush();
+        queue.accept(book("3"));
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Deve regravar pelo journal os livros aceitos antes de uma queda")
+    public void replayJournalTest() throws IOException {
+
+        BookWriteBehindQueue crashed = newQueue(10);
+        crashed.accept(book("1"));
+        crashed.accept(book("2"));
+        // simula a queda: o processo some sem flush nem close
+
+        BookWriteBehindQueue restarted = newQueue(10);
+        restarted.flush();
+
+        assertThat(flushed).hasSize(1);
+        assertThat(flushed.get(0)).extracting(Book::getIsbn).containsExactly("1", "2");
+
+        BookWriteBehindQueue again = newQueue(10);
+        again.flush();
+
+        assertThat(flushed).hasSize(1);
+        again.close();
+    }
+
+    @Test
+    @DisplayName("Deve manter o lote pendente quando o banco falhar")
+    public void retryOnFailureTest() throws IOException {
+
+        BookWriteBehindQueue queue = newQueue(10);
+        BookTrackingDTO tracking = queue.accept(book("1"));
+
+        when(service.saveAll(anyList())).thenThrow(new CannotCreateTransactionException("banco fora"));
+        queue.flush();
+
+        assertThat(queue.status(tracking.getTrackingId()).get().getStatus())
+                .isEqualTo(BookTrackingDTO.Status.PENDING);
+        assertThat(journalSize()).isPositive();
+
+        Mockito.reset(service);
+        when(service.saveAll(anyList())).thenAnswer(invocation -> invocation.<List<Book>>getArgument(0).stream()
+                .map(BookSaveResult::created).collect(Collectors.toList()));
+        queue.flush();
+
+        assertThat(queue.status(tracking.getTrackingId()).get().getStatus())
+                .isEqualTo(BookTrackingDTO.Status.CREATED);
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Deve gravar um a um e marcar como falho o livro recusado de vez pelo banco")
+    public void permanentFailureTest() throws IOException {
+
+        BookWriteBehindQueue queue = newQueue(10);
+        BookTrackingDTO valido = queue.accept(book("1"));
+        BookTrackingDTO recusado = queue.accept(book("2"));
+
+        Mockito.reset(service);
+        when(service.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Book> books = invocation.getArgument(0);
+            if (books.size() > 1 || "2".equals(books.get(0).getIsbn())) {
+                throw new IllegalStateException("valor inválido");
+            }
+            books.get(0).setId(1L);
+            return Collections.singletonList(BookSaveResult.created(books.get(0)));
+        });
+        queue.flush();
+
+        assertThat(queue.status(valido.getTrackingId()).get().getStatus())
+                .isEqualTo(BookTrackingDTO.Status.CREATED);
+        assertThat(queue.status(recusado.getTrackingId()).get().getStatus())
+                .isEqualTo(BookTrackingDTO.Status.FAILED);
+        assertThat(journalSize()).isZero();
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Deve recusar no aceite valores maiores que as colunas")
+    public void rejectOversizedValuesTest() throws IOException {
+
+        BookWriteBehindQueue queue = newQueue(10);
+        Book book = book("1");
+        book.setTitle(String.join("", Collections.nCopies(256, "a")));
+
+        Throwable exception = Assertions.catchThrowable(() -> queue.accept(book));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("title excede 255 caracteres!");
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Deve apagar os segmentos já gravados mesmo com a fila nunca vazia")
+    public void rollSegmentsUnderSustainedIngestTest() throws IOException {
+
+        BookWriteBehindQueue queue = newQueue(10, false, 1);
+        AtomicLong next = new AtomicLong(1);
+        List<Integer> segmentsPerBatch = new ArrayList<>();
+        Mockito.reset(service);
+        when(service.saveAll(anyList())).thenAnswer(invocation -> {
+            segmentsPerBatch.add(segments().size());
+            // um novo aceite chega enquanto o lote anterior é gravado
+            if (next.get() < 6) {
+                queue.accept(book(String.valueOf(next.incrementAndGet())));
+            }
+            return invocation.<List<Book>>getArgument(0).stream()
+                    .map(BookSaveResult::created).collect(Collectors.toList());
+        });
+        queue.accept(book("1"));
+
+        queue.flush();
+
+        assertThat(segmentsPerBatch).hasSize(6).allMatch(segments -> segments <= 2);
+        assertThat(journalSize()).isZero();
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Deve aceitar em paralelo com fsync em grupo sem perder aceites")
+    public void groupCommitTest() throws Exception {
+
+        BookWriteBehindQueue queue = newQueue(1000, true, 16 * 1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<BookTrackingDTO>> accepted = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String isbn = String.valueOf(i);
+            accepted.add(executor.submit(() -> queue.accept(book(isbn))));
+        }
+        for (Future<BookTrackingDTO> tracking : accepted) {
+            assertThat(tracking.get(10, TimeUnit.SECONDS).getStatus()).isEqualTo(BookTrackingDTO.Status.PENDING);
+        }
+        executor.shutdown();
+        // simula a queda logo depois dos aceites
+
+        BookWriteBehindQueue restarted = newQueue(1000);
+        restarted.flush();
+
+        assertThat(flushed).hasSize(1);
+        assertThat(flushed.get(0)).hasSize(200);
+        restarted.close();
+    }
+
+    private BookWriteBehindQueue newQueue(int capacity) throws IOException {
+        return newQueue(capacity, false, 16 * 1024 * 1024);
+    }
+
+    private BookWriteBehindQueue newQueue(int capacity, boolean fsync, long segmentBytes) throws IOException {
+        BookWriteBehindQueue queue = new BookWriteBehindQueue(service, repository, isbnIndex, new ObjectMapper(),
+                new SimpleMeterRegistry(), directory.resolve("books.journal").toString(), capacity, 500, fsync,
+                segmentBytes, 10);
+        queue.open();
+        return queue;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().matches("books\\.journal\\.\\d+"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long journalSize() throws IOException {
+        long size = 0;
+        for (Path segment : segments()) {
+            size += Files.size(segment);
+        }
+        return size;
+    }
+
+    private static Book book(String isbn) {
+        return Book.builder().title("Fábrica de Valores").author("Evandro Guedes").isbn(isbn).build();
+    }
+}
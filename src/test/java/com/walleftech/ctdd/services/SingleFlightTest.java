@@ -0,0 +1,122 @@
+package com.walleftech.ctdd.services;
+
+import com.walleftech.ctdd.exceptions.ResourceNotFoundException;
+import com.walleftech.ctdd.services.impl.SingleFlight;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("Test")
+public class SingleFlightTest {
+
+    private static final int THREADS = 32;
+
+    private SimpleMeterRegistry registry;
+    private SingleFlight<Long, String> flight;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        flight = new SingleFlight<>("test", registry);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @Test
+    @DisplayName("Deve executar uma única vez para chamadas concorrentes da mesma chave")
+    public void coalesceConcurrentCallsTest() throws Exception {
+
+        AtomicInteger calls = new AtomicInteger();
+        List<Future<String>> results = submitAll(() -> {
+            calls.incrementAndGet();
+            awaitCoalesced(THREADS - 1);
+            return "Fábrica de Valores";
+        });
+
+        for (Future<String> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("Fábrica de Valores");
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(coalesced()).isEqualTo(THREADS - 1);
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Deve propagar a mesma exceção para todas as chamadas coalescidas")
+    public void propagateFailureTest() throws Exception {
+
+        List<Future<String>> results = submitAll(() -> {
+            awaitCoalesced(THREADS - 1);
+            throw new ResourceNotFoundException("Resource Not Found!");
+        });
+
+        for (Future<String> result : results) {
+            Throwable cause = null;
+            try {
+                result.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException ex) {
+                cause = ex.getCause();
+            }
+            assertThat(cause).isInstanceOf(ResourceNotFoundException.class);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Deve executar de novo depois que a chamada anterior terminou")
+    public void notCacheCompletedCallsTest() {
+
+        AtomicInteger calls = new AtomicInteger();
+
+        flight.execute(1L, () -> "v" + calls.incrementAndGet());
+        String second = flight.execute(1L, () -> "v" + calls.incrementAndGet());
+
+        assertThat(second).isEqualTo("v2");
+        assertThat(coalesced()).isZero();
+        executor.shutdown();
+    }
+
+    private List<Future<String>> submitAll(Callable<String> call) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return flight.execute(1L, () -> {
+                    try {
+                        return call.call();
+                    } catch (RuntimeException ex) {
+                        throw ex;
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                });
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    private void awaitCoalesced(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalesced() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private double coalesced() {
+        return registry.get(SingleFlight.COALESCED_COUNTER).tag("operation", "test").counter().count();
+    }
+}